@@ -0,0 +1,48 @@
+import java.io.Serializable;
+
+/**
+ * Retângulo em coordenadas geográficas (graus de longitude e latitude).
+ */
+public class BoundingBox implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final double minLon;
+    final double minLat;
+    final double maxLon;
+    final double maxLat;
+
+    public BoundingBox(double minLon, double minLat, double maxLon, double maxLat) {
+        if (minLon > maxLon || minLat > maxLat) {
+            throw new IllegalArgumentException("Bounding box inválida: mínimo maior que máximo");
+        }
+        this.minLon = minLon;
+        this.minLat = minLat;
+        this.maxLon = maxLon;
+        this.maxLat = maxLat;
+    }
+
+    boolean intersects(double otherMinLon, double otherMinLat, double otherMaxLon, double otherMaxLat) {
+        return minLon <= otherMaxLon && otherMinLon <= maxLon && minLat <= otherMaxLat && otherMinLat <= maxLat;
+    }
+
+    boolean intersects(BoundingBox other) {
+        return intersects(other.minLon, other.minLat, other.maxLon, other.maxLat);
+    }
+
+    /**
+     * Lê uma bounding box no formato "minLon,minLat,maxLon,maxLat".
+     */
+    static BoundingBox parse(String value) {
+        String[] fields = value.split(",");
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Formato esperado: minLon,minLat,maxLon,maxLat");
+        }
+        return new BoundingBox(Double.parseDouble(fields[0].trim()), Double.parseDouble(fields[1].trim()),
+                Double.parseDouble(fields[2].trim()), Double.parseDouble(fields[3].trim()));
+    }
+
+    @Override
+    public String toString() {
+        return minLon + "," + minLat + "," + maxLon + "," + maxLat;
+    }
+}
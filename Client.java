@@ -14,12 +14,18 @@ import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Client extends UnicastRemoteObject implements SubscriberInterface {
     private static final String DOWNLOAD_DIR = "client_downloads/";
+    private static final int LIST_PAGE_SIZE = 50;
     private static MasterServerInterface master;
     private static Scanner scanner;
+    private static final Tracer tracer = new Tracer("client");
+    static final ReplicaSelector replicaSelector = new ReplicaSelector(tracer);
 
     // Construtor necessário devido ao UnicastRemoteObject
     protected Client() throws RemoteException {
@@ -42,7 +48,7 @@ public class Client extends UnicastRemoteObject implements SubscriberInterface {
             }
 
             Registry registry = LocateRegistry.getRegistry("localhost", 1097);
-            master = (MasterServerInterface) registry.lookup("MasterServer");
+            master = PartitionedMaster.lookup(registry, PartitionedMaster.PARTITIONS);
 
             // Cria uma instância do cliente remoto para receber notificações
             Client client = new Client();
@@ -61,7 +67,11 @@ public class Client extends UnicastRemoteObject implements SubscriberInterface {
                 System.out.println("6. Inscrever-se em um tipo de evento (subscribe)");
                 System.out.println("7. Cancelar inscrição em um tipo de evento (unsubscribe)");
                 System.out.println("8. Listar tipos de eventos disponíveis");
-                System.out.println("9. Sair");
+                System.out.println("9. Upload de imagem em tiles (pirâmide de zoom)");
+                System.out.println("10. Baixar tile");
+                System.out.println("11. Buscar imagens por área e período");
+                System.out.println("12. Listar partes sub-replicadas");
+                System.out.println("13. Sair");
                 System.out.print("Opção: ");
                 option = scanner.nextLine();
 
@@ -91,12 +101,24 @@ public class Client extends UnicastRemoteObject implements SubscriberInterface {
                         listEventTypes();
                         break;
                     case "9":
+                        uploadTiledImage();
+                        break;
+                    case "10":
+                        downloadTile();
+                        break;
+                    case "11":
+                        queryImages();
+                        break;
+                    case "12":
+                        listUnderReplicatedParts();
+                        break;
+                    case "13":
                         System.out.println("Encerrando o cliente.");
                         break;
                     default:
                         System.out.println("Opção inválida.");
                 }
-            } while (!option.equals("9"));
+            } while (!option.equals("13"));
 
         } catch (Exception e) {
             System.err.println("Erro no cliente: " + e.getMessage());
@@ -122,122 +144,386 @@ public class Client extends UnicastRemoteObject implements SubscriberInterface {
 
             System.out.print("Digite o número de partes para dividir a imagem: ");
             int numParts = Integer.parseInt(scanner.nextLine());
+            GeoMetadata metadata = readGeoMetadata();
 
-            if (master.storeImage(file.getName(), imageData, numParts)) {
-                System.out.println("Imagem enviada com sucesso.");
-            } else {
-                System.out.println("Falha ao enviar a imagem.");
+            try (Span span = tracer.startClientSpan("MasterServer.storeImage")) {
+                span.setAttribute("image.name", file.getName());
+                if (master.storeImage(file.getName(), imageData, numParts, metadata, span.context())) {
+                    System.out.println("Imagem enviada com sucesso.");
+                } else {
+                    span.setError();
+                    System.out.println("Falha ao enviar a imagem.");
+                }
             }
         } catch (Exception e) {
             System.err.println("Erro ao enviar a imagem: " + e.getMessage());
         }
     }
 
-    private static void listImages() {
+    /**
+     * Lê os metadados geográficos opcionais da cena. Retorna null se o usuário
+     * não informar a área coberta.
+     */
+    private static GeoMetadata readGeoMetadata() {
+        System.out.print("Área coberta (minLon,minLat,maxLon,maxLat) ou ENTER para omitir: ");
+        String bbox = scanner.nextLine().trim();
+        if (bbox.isEmpty()) {
+            return null;
+        }
+        System.out.print("Instante da captura (ex: 2024-05-01T13:45:00Z) ou ENTER para agora: ");
+        String capture = scanner.nextLine().trim();
+        System.out.print("Sensor (ex: Sentinel-2) ou ENTER para omitir: ");
+        String sensor = scanner.nextLine().trim();
+        long captureTime = capture.isEmpty() ? System.currentTimeMillis() : Instant.parse(capture).toEpochMilli();
+        return new GeoMetadata(BoundingBox.parse(bbox), captureTime, sensor.isEmpty() ? null : sensor);
+    }
+
+    private static void queryImages() {
         try {
-            List<String> images = master.listImages();
-            System.out.println("Imagens disponíveis:");
-            for (String image : images) {
+            System.out.print("Área de interesse (minLon,minLat,maxLon,maxLat): ");
+            BoundingBox bbox = BoundingBox.parse(scanner.nextLine());
+            System.out.print("Capturadas a partir de (ex: 2024-01-01T00:00:00Z) ou ENTER para qualquer: ");
+            String from = scanner.nextLine().trim();
+            System.out.print("Capturadas até (ex: 2024-12-31T23:59:59Z) ou ENTER para qualquer: ");
+            String to = scanner.nextLine().trim();
+            System.out.print("Número máximo de resultados: ");
+            int limit = Integer.parseInt(scanner.nextLine());
+
+            long fromMillis = from.isEmpty() ? Long.MIN_VALUE : Instant.parse(from).toEpochMilli();
+            long toMillis = to.isEmpty() ? Long.MAX_VALUE : Instant.parse(to).toEpochMilli();
+            ImagePage result;
+            try (Span span = tracer.startClientSpan("MasterServer.queryImages")) {
+                result = master.queryImages(bbox, fromMillis, toMillis, limit, span.context());
+            }
+            System.out.println(result.names.size() + " imagem(ns) encontrada(s):");
+            for (String image : result.names) {
                 System.out.println("- " + image);
             }
+            warnIfPartial(result);
+        } catch (DateTimeParseException e) {
+            System.err.println("Data inválida: " + e.getParsedString());
+        } catch (Exception e) {
+            System.err.println("Erro ao buscar imagens: " + e.getMessage());
+        }
+    }
+
+    private static void listImages() {
+        try {
+            System.out.print("Prefixo do nome (ENTER para todas): ");
+            String prefix = scanner.nextLine().trim();
+
+            System.out.println("Imagens disponíveis:");
+            String startAfter = null;
+            do {
+                ImagePage page;
+                try (Span span = tracer.startClientSpan("MasterServer.listImages")) {
+                    page = master.listImages(prefix, startAfter, LIST_PAGE_SIZE, span.context());
+                }
+                for (String image : page.names) {
+                    System.out.println("- " + image);
+                }
+                warnIfPartial(page);
+                startAfter = page.nextStartAfter;
+                if (startAfter != null) {
+                    System.out.print("ENTER para a próxima página, q para parar: ");
+                    if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                        break;
+                    }
+                }
+            } while (startAfter != null);
         } catch (Exception e) {
             System.err.println("Erro ao listar imagens: " + e.getMessage());
         }
     }
 
+    private static void warnIfPartial(ImagePage page) {
+        if (page.isPartial()) {
+            System.out.println("Aviso: resultado incompleto; as partições " + page.unavailablePartitions
+                    + " do namespace não responderam.");
+        }
+    }
+
+    private static void listUnderReplicatedParts() {
+        try {
+            List<String> parts;
+            try (Span span = tracer.startClientSpan("MasterServer.listUnderReplicatedParts")) {
+                parts = master.listUnderReplicatedParts(span.context());
+            }
+            if (parts.isEmpty()) {
+                System.out.println("Todas as partes têm o número de réplicas esperado.");
+                return;
+            }
+            System.out.println("Partes sub-replicadas:");
+            for (String part : parts) {
+                System.out.println("- " + part);
+            }
+        } catch (Exception e) {
+            System.err.println("Erro ao listar partes sub-replicadas: " + e.getMessage());
+        }
+    }
+
     private static void downloadImage() {
         try {
             System.out.print("Digite o nome da imagem a ser baixada: ");
             String imageName = scanner.nextLine();
 
-            Map<Integer, DataNodeInterface> partsMap = master.getImageParts(imageName);
+            byte[] imageData = fetchImage(master, imageName);
+            if (imageData == null) {
+                return;
+            }
+
+            // Salva a imagem
+            FileOutputStream fos = new FileOutputStream(DOWNLOAD_DIR + imageName);
+            fos.write(imageData);
+            fos.close();
+
+            System.out.println("Imagem '" + imageName + "' baixada com sucesso.");
+        } catch (Exception e) {
+            System.err.println("Erro ao baixar a imagem: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Baixa todas as partes de uma imagem e a reconstrói.
+     * @return os bytes da imagem, ou null se a imagem não existir ou alguma parte falhar
+     */
+    static byte[] fetchImage(MasterServerInterface master, String imageName) throws RemoteException {
+        return fetchImage(master, imageName, false, null);
+    }
+
+    /**
+     * Variante de {@link #fetchImage(MasterServerInterface, String)} para o gerador de carga.
+     * @param quiet  não imprime mensagens para o usuário
+     * @param misses incrementado quando a imagem não existe (pode ser null)
+     */
+    static byte[] fetchImage(MasterServerInterface master, String imageName, boolean quiet, AtomicLong misses)
+            throws RemoteException {
+        try (Span span = tracer.startSpan("Client.fetchImage")) {
+            span.setAttribute("image.name", imageName);
+
+            Map<Integer, Map<String, DataNodeInterface>> partsMap;
+            try (Span rpc = tracer.startClientSpan("MasterServer.getImageReplicas")) {
+                partsMap = master.getImageReplicas(imageName, rpc.context());
+            }
 
             if (partsMap == null) {
-                System.out.println("Imagem não encontrada.");
-                return;
+                if (misses != null) {
+                    misses.incrementAndGet();
+                }
+                if (!quiet) {
+                    System.out.println("Imagem não encontrada.");
+                }
+                return null;
+            }
+            if (partsMap.size() > 1 && isTiled(master, imageName)) {
+                // Os tiles são imagens independentes; concatená-los não reconstrói a original
+                if (!quiet) {
+                    System.out.println("A imagem '" + imageName
+                            + "' está armazenada em tiles; use a opção 10 (Baixar tile).");
+                }
+                span.setError();
+                return null;
             }
 
             List<byte[]> imageParts = new ArrayList<>();
             for (int i = 0; i < partsMap.size(); i++) {
-                DataNodeInterface dataNode = partsMap.get(i);
-                byte[] partData = dataNode.downloadPart(imageName, i);
+                byte[] partData;
+                try {
+                    partData = replicaSelector.downloadPart(imageName, i, partsMap.get(i), span.context());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    span.setError();
+                    return null;
+                }
                 if (partData != null) {
                     imageParts.add(partData);
                 } else {
-                    System.out.println("Falha ao baixar a parte " + i + " da imagem.");
-                    return;
+                    if (!quiet) {
+                        System.out.println("Falha ao baixar a parte " + i + " da imagem.");
+                    }
+                    span.setError();
+                    return null;
                 }
             }
 
-            // Reconstroi a imagem
-            int totalSize = imageParts.stream().mapToInt(part -> part.length).sum();
-            byte[] imageData = new byte[totalSize];
-            int currentIndex = 0;
-            for (byte[] part : imageParts) {
-                System.arraycopy(part, 0, imageData, currentIndex, part.length);
-                currentIndex += part.length;
+            try (Span assemble = tracer.startSpan("Client.assembleParts")) {
+                assemble.setAttribute("parts", imageParts.size());
+                return assembleParts(imageParts);
             }
+        }
+    }
 
-            // Salva a imagem
-            FileOutputStream fos = new FileOutputStream(DOWNLOAD_DIR + imageName);
-            fos.write(imageData);
-            fos.close();
+    private static boolean isTiled(MasterServerInterface master, String imageName) throws RemoteException {
+        try (Span rpc = tracer.startClientSpan("MasterServer.getTilePyramid")) {
+            return master.getTilePyramid(imageName, rpc.context()) != null;
+        }
+    }
 
-            System.out.println("Imagem '" + imageName + "' baixada com sucesso.");
-        } catch (Exception e) {
-            System.err.println("Erro ao baixar a imagem: " + e.getMessage());
+    /**
+     * Reconstroi a imagem concatenando as partes na ordem.
+     */
+    static byte[] assembleParts(List<byte[]> imageParts) {
+        int totalSize = 0;
+        for (byte[] part : imageParts) {
+            totalSize += part.length;
+        }
+        byte[] imageData = new byte[totalSize];
+        int currentIndex = 0;
+        for (byte[] part : imageParts) {
+            System.arraycopy(part, 0, imageData, currentIndex, part.length);
+            currentIndex += part.length;
         }
+        return imageData;
     }
 
-    private static void deleteImage() {
+    private static void uploadTiledImage() {
         try {
-            System.out.print("Digite o nome da imagem a ser deletada: ");
-            String imageName = scanner.nextLine();
+            System.out.print("Digite o caminho da imagem a ser enviada: ");
+            String filePath = scanner.nextLine();
+            File file = new File(filePath);
 
-            if (master.deleteImage(imageName)) {
-                System.out.println("Imagem deletada com sucesso.");
-            } else {
-                System.out.println("Imagem não encontrada ou falha ao deletar.");
+            if (!file.exists()) {
+                System.out.println("Arquivo não encontrado.");
+                return;
+            }
+
+            byte[] imageData = Files.readAllBytes(file.toPath());
+
+            System.out.print("Digite o tamanho do tile em pixels (ex: 256): ");
+            int tileSize = Integer.parseInt(scanner.nextLine());
+            if (tileSize <= 0) {
+                System.out.println("O tamanho do tile deve ser positivo.");
+                return;
+            }
+            GeoMetadata metadata = readGeoMetadata();
+
+            try (Span span = tracer.startClientSpan("MasterServer.storeTiledImage")) {
+                span.setAttribute("image.name", file.getName());
+                if (master.storeTiledImage(file.getName(), imageData, tileSize, metadata, span.context())) {
+                    TilePyramid pyramid = master.getTilePyramid(file.getName(), span.context());
+                    System.out.println("Imagem enviada com sucesso: " + pyramid.width + "x" + pyramid.height
+                            + " pixels, " + pyramid.tileCount() + " tiles em " + pyramid.levels
+                            + " níveis de zoom (0 a " + (pyramid.levels - 1) + ").");
+                } else {
+                    span.setError();
+                    System.out.println("Falha ao enviar a imagem.");
+                }
             }
         } catch (Exception e) {
-            System.err.println("Erro ao deletar a imagem: " + e.getMessage());
+            System.err.println("Erro ao enviar a imagem: " + e.getMessage());
         }
     }
 
-    private static void testPerformance() {
+    private static void downloadTile() {
         try {
-            System.out.print("Digite o número de imagens para o teste (10, 50, 200): ");
-            int numImages = Integer.parseInt(scanner.nextLine());
-
-            List<String> imageNames = new ArrayList<>();
-            for (int i = 1; i <= numImages; i++) {
-                imageNames.add("imagem_teste_" + i + ".jpg");
+            System.out.print("Digite o nome da imagem: ");
+            String imageName = scanner.nextLine();
+            System.out.print("Digite o tile no formato z/x/y: ");
+            String[] coords = scanner.nextLine().trim().split("/");
+            int z = Integer.parseInt(coords[0]);
+            int x = Integer.parseInt(coords[1]);
+            int y = Integer.parseInt(coords[2]);
+
+            byte[] tile = getTile(master, imageName, z, x, y);
+            if (tile == null) {
+                System.out.println("Tile não encontrado.");
+                return;
             }
 
-            // Teste de inserção
-            long startInsertion = System.currentTimeMillis();
-            for (String imageName : imageNames) {
-                byte[] imageData = new byte[1024 * 50]; // Imagem de 50KB (exemplo)
-                new Random().nextBytes(imageData);
-                master.storeImage(imageName, imageData, 5);
+            TilePyramid pyramid = master.getTilePyramid(imageName, null);
+            String fileName = imageName + "_" + z + "_" + x + "_" + y + "." + pyramid.format;
+            Files.write(new File(DOWNLOAD_DIR + fileName).toPath(), tile);
+            System.out.println("Tile salvo em " + DOWNLOAD_DIR + fileName + " (" + tile.length + " bytes).");
+        } catch (Exception e) {
+            System.err.println("Erro ao baixar o tile: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Baixa um único tile (nível de zoom z, coluna x, linha y) de uma imagem
+     * armazenada em pirâmide, sem transferir o restante da imagem.
+     * @return os bytes do tile codificado, ou null se o tile não existir
+     */
+    static byte[] getTile(MasterServerInterface master, String imageName, int z, int x, int y)
+            throws RemoteException {
+        try (Span span = tracer.startSpan("Client.getTile")) {
+            span.setAttribute("image.name", imageName).setAttribute("tile", z + "/" + x + "/" + y);
+
+            TileLocation location;
+            try (Span rpc = tracer.startClientSpan("MasterServer.locateTile")) {
+                location = master.locateTile(imageName, z, x, y, rpc.context());
             }
-            long endInsertion = System.currentTimeMillis();
-            System.out.println("Tempo de inserção de " + numImages + " imagens: " + (endInsertion - startInsertion) + " ms");
-
-            // Teste de recuperação
-            long startRetrieval = System.currentTimeMillis();
-            for (String imageName : imageNames) {
-                Map<Integer, DataNodeInterface> partsMap = master.getImageParts(imageName);
-                if (partsMap != null) {
-                    for (int i = 0; i < partsMap.size(); i++) {
-                        DataNodeInterface dataNode = partsMap.get(i);
-                        dataNode.downloadPart(imageName, i);
+            if (location == null) {
+                span.setError();
+                return null;
+            }
+            try (Span rpc = tracer.startClientSpan("DataNode.downloadPart")) {
+                rpc.setAttribute("part.number", location.partNumber);
+                try {
+                    byte[] tile = location.dataNode.downloadPart(imageName, location.partNumber, rpc.context());
+                    if (tile != null) {
+                        return tile;
                     }
+                } catch (DataNodeBusyException | RemoteException e) {
+                    rpc.setError();
                 }
             }
-            long endRetrieval = System.currentTimeMillis();
-            System.out.println("Tempo de recuperação de " + numImages + " imagens: " + (endRetrieval - startRetrieval) + " ms");
 
+            // A réplica indicada pelo master está ocupada, inacessível ou sem a parte íntegra:
+            // escolhe outra (ou espera) pelo ReplicaSelector
+            Map<Integer, Map<String, DataNodeInterface>> replicas;
+            try (Span rpc = tracer.startClientSpan("MasterServer.getImageReplicas")) {
+                replicas = master.getImageReplicas(imageName, rpc.context());
+            }
+            if (replicas == null || replicas.get(location.partNumber) == null) {
+                span.setError();
+                return null;
+            }
+            try {
+                return replicaSelector.downloadPart(imageName, location.partNumber,
+                        replicas.get(location.partNumber), span.context());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private static void deleteImage() {
+        try {
+            System.out.print("Digite o nome da imagem a ser deletada: ");
+            String imageName = scanner.nextLine();
+
+            try (Span span = tracer.startClientSpan("MasterServer.deleteImage")) {
+                span.setAttribute("image.name", imageName);
+                if (master.deleteImage(imageName, span.context())) {
+                    System.out.println("Imagem deletada com sucesso.");
+                } else {
+                    span.setError();
+                    System.out.println("Imagem não encontrada ou falha ao deletar.");
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Erro ao deletar a imagem: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Executa o gerador de carga (LoadGenerator) contra o MasterServer conectado.
+     * Para execuções mais detalhadas, use diretamente: java LoadGenerator --help
+     */
+    private static void testPerformance() {
+        try {
+            LoadGenerator.Config config = new LoadGenerator.Config();
+            System.out.print("Digite o número de imagens para o teste (10, 50, 200): ");
+            config.keys = Integer.parseInt(scanner.nextLine());
+            System.out.print("Digite o número de clientes concorrentes: ");
+            config.clients = Integer.parseInt(scanner.nextLine());
+            System.out.print("Digite a duração do teste em segundos: ");
+            config.durationSeconds = Integer.parseInt(scanner.nextLine());
+            config.warmupSeconds = Math.min(config.warmupSeconds, config.durationSeconds);
+
+            System.out.println(LoadGenerator.run(master, config));
         } catch (Exception e) {
             System.err.println("Erro no teste de desempenho: " + e.getMessage());
         }
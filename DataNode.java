@@ -6,9 +6,27 @@
 */
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream; 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.rmi.registry.LocateRegistry;
@@ -16,11 +34,70 @@ import java.rmi.registry.Registry;
 
 /**
  * Classe que representa um nó de dados (DataNode) responsável por armazenar partes de imagens.
- * Cada parte é salva como um arquivo no diretório local do DataNode.
+ * Cada parte é salva como um arquivo no diretório local do DataNode, acompanhada de um
+ * arquivo ".crc32c" com o checksum CRC32C do seu conteúdo.
  */
 public class DataNode extends UnicastRemoteObject implements DataNodeInterface {
-    private static final String STORAGE_DIR = "data_node_storage/";
+    private static final String DEFAULT_STORAGE_DIR = "data_node_storage/";
+    private static final String CHECKSUM_SUFFIX = ".crc32c";
+    private static final Pattern PART_FILE_PATTERN = Pattern.compile("(.+)_part(\\d+)");
+    private static final int IO_CHUNK_SIZE = 64 * 1024;
+
+    // Taxa máxima de leitura do scrubber (MB/s) e intervalo entre varreduras completas
+    private static final int SCRUB_RATE_MBPS = Integer.getInteger("datanode.scrub.mbps", 10);
+    private static final int SCRUB_INTERVAL_SECONDS = Integer.getInteger("datanode.scrub.intervalSeconds", 3600);
+    private static final int MONITOR_PORT = 2000;
+    // Durabilidade das gravações: "none" (sem fsync), "fsync" (fsync de cada parte antes
+    // da confirmação) ou "group" (log de escrita com group commit, ver GroupCommitLog)
+    private static final String DURABILITY = System.getProperty("datanode.durability", "none");
+    // Limites de admissão de uploadPart/downloadPart; acima deles o nó responde DataNodeBusyException
+    private static final int MAX_ADMITTED_REQUESTS = Integer.getInteger("datanode.admission.maxRequests", 64);
+    private static final long MAX_IN_FLIGHT_BYTES = Long.getLong("datanode.admission.maxInFlightMB", 256) * 1024 * 1024;
+    private static final long MIN_RETRY_AFTER_MS = 5;
+    private static final long MAX_RETRY_AFTER_MS = 1000;
+
     private String dataNodeId;
+    private final String storageDir;
+    private volatile MasterServerInterface master;
+
+    // Métricas enviadas periodicamente ao MonitorService
+    private final Metrics metrics;
+    private final LatencyHistogram uploadLatency;
+    private final LatencyHistogram downloadLatency;
+    private final LatencyHistogram deleteLatency;
+    private final LatencyHistogram deleteBatchLatency;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+    private final LongAdder checksumFailures;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicInteger admittedRequests = new AtomicInteger();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final LongAdder admissionRejections;
+
+    // Presente apenas com datanode.durability=group
+    private final GroupCommitLog commitLog;
+
+    /**
+     * Locks por faixa de partes: gravação e remoção da mesma parte (arquivos e
+     * registro no log) não se intercalam, e a leitura (trava de leitura) não vê os
+     * dados de uma gravação com o checksum da anterior. deleteParts trava várias
+     * faixas de uma vez, sempre em ordem crescente, por isso locks explícitos em vez
+     * de synchronized.
+     */
+    private static final int PART_LOCK_STRIPES = 256;
+    private final ReentrantReadWriteLock[] partLocks = new ReentrantReadWriteLock[PART_LOCK_STRIPES];
+
+    // Os avisos de corrupção ao MasterServer saem desta thread: o master pode estar
+    // nos chamando (downloadPart) enquanto segura o lock de que reportCorruptPart precisa
+    private final ExecutorService corruptionReporter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "corruption-report");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Tracer tracer;
+    private Thread scrubberThread; // null: scrubber não iniciado
+    private volatile boolean closed;
 
     /**
      * Construtor do DataNode.
@@ -28,32 +105,221 @@ public class DataNode extends UnicastRemoteObject implements DataNodeInterface {
      * @throws RemoteException Em caso de falha de comunicação RMI.
      */
     protected DataNode(String dataNodeId) throws RemoteException {
+        this(dataNodeId, DEFAULT_STORAGE_DIR);
+    }
+
+    /**
+     * Construtor do DataNode com diretório de armazenamento próprio, usado quando vários
+     * DataNodes executam no mesmo processo (por exemplo, nos benchmarks).
+     * @param dataNodeId Identificador único para este DataNode.
+     * @param storageDir Diretório onde as partes serão gravadas.
+     * @throws RemoteException Em caso de falha de comunicação RMI.
+     */
+    protected DataNode(String dataNodeId, String storageDir) throws RemoteException {
         this.dataNodeId = dataNodeId;
-        File dir = new File(STORAGE_DIR);
+        this.storageDir = storageDir.endsWith("/") ? storageDir : storageDir + "/";
+        for (int i = 0; i < PART_LOCK_STRIPES; i++) {
+            partLocks[i] = new ReentrantReadWriteLock();
+        }
+        this.metrics = new Metrics("datanode-" + dataNodeId);
+        this.tracer = new Tracer("datanode-" + dataNodeId);
+        this.uploadLatency = metrics.histogram("datanode_upload_part_seconds", "Latência de uploadPart");
+        this.downloadLatency = metrics.histogram("datanode_download_part_seconds", "Latência de downloadPart");
+        this.deleteLatency = metrics.histogram("datanode_delete_part_seconds", "Latência de deletePart");
+        this.deleteBatchLatency = metrics.histogram("datanode_delete_parts_seconds", "Latência de deleteParts (lote)");
+        this.bytesIn = metrics.counter("datanode_bytes_in_total", "Bytes de partes recebidos");
+        this.bytesOut = metrics.counter("datanode_bytes_out_total", "Bytes de partes enviados");
+        this.checksumFailures = metrics.counter("datanode_checksum_failures_total",
+                "Partes com checksum inválido na leitura ou na verificação periódica");
+        metrics.gauge("datanode_in_flight_requests", "Requisições em andamento", inFlightRequests::get);
+        metrics.gauge("datanode_in_flight_bytes", "Bytes de partes em uploads e downloads admitidos", inFlightBytes::get);
+        this.admissionRejections = metrics.counter("datanode_admission_rejections_total",
+                "Requisições recusadas por excesso de carga");
+        File dir = new File(this.storageDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
+        if ("group".equals(DURABILITY)) {
+            try {
+                this.commitLog = new GroupCommitLog(new File(dir, "wal"), "DataNode " + dataNodeId, metrics,
+                        new GroupCommitLog.Applier() {
+                            @Override
+                            public void write(String imageName, int partNumber, byte[] data) throws IOException {
+                                writePartFile(imageName, partNumber, data, true);
+                            }
+
+                            @Override
+                            public void delete(String imageName, int partNumber) {
+                                // Os segmentos são apagados depois: a remoção precisa estar no disco antes
+                                deletePartFiles(imageName, partNumber);
+                                GroupCommitLog.syncDirectory(dir);
+                            }
+                        });
+            } catch (IOException e) {
+                throw new RemoteException("Erro ao abrir o log de escrita do DataNode " + dataNodeId, e);
+            }
+        } else {
+            this.commitLog = null;
+        }
+    }
+
+    private File partFile(String imageName, int partNumber) {
+        return new File(storageDir + imageName + "_part" + partNumber);
+    }
+
+    private static File checksumFile(File partFile) {
+        return new File(partFile.getPath() + CHECKSUM_SUFFIX);
     }
 
     @Override
-    public boolean uploadPart(String imageName, int partNumber, byte[] data) throws RemoteException {
-        try (FileOutputStream fos = new FileOutputStream(STORAGE_DIR + imageName + "_part" + partNumber)) {
-            fos.write(data);
-            System.out.println("DataNode " + dataNodeId + ": Parte " + partNumber + " da imagem '" + imageName + "' armazenada.");
+    public boolean uploadPart(String imageName, int partNumber, byte[] data, TraceContext trace)
+            throws RemoteException, DataNodeBusyException {
+        admit(data.length, uploadLatency);
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("DataNode.uploadPart", trace)) {
+            span.setAttribute("datanode.id", dataNodeId).setAttribute("part.bytes", data.length);
+            return writePart(imageName, partNumber, data);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            release(data.length);
+            uploadLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Admite uma requisição de 'bytes' bytes ou a recusa se o nó já estiver no limite
+     * de requisições ou de bytes em andamento. Um nó ocioso sempre admite, para que
+     * uma parte maior que o limite de bytes ainda possa ser gravada.
+     *
+     * Os bytes de um upload já estão na memória quando a chamada chega; recusar logo
+     * libera essa memória e evita que a fila do disco cresça sem limite.
+     *
+     * @param latency latências da operação, usadas para sugerir quando tentar de novo
+     */
+    private void admit(long bytes, LatencyHistogram latency) throws DataNodeBusyException {
+        int requests = admittedRequests.incrementAndGet();
+        long totalBytes = inFlightBytes.addAndGet(bytes);
+        if (requests > 1 && (requests > MAX_ADMITTED_REQUESTS || totalBytes > MAX_IN_FLIGHT_BYTES)) {
+            release(bytes);
+            admissionRejections.increment();
+            long typicalMillis = latency.count() == 0 ? 0 : latency.percentile(50) / 1_000_000;
+            throw new DataNodeBusyException(dataNodeId,
+                    Math.min(MAX_RETRY_AFTER_MS, Math.max(MIN_RETRY_AFTER_MS, typicalMillis)));
+        }
+    }
+
+    private void release(long bytes) {
+        admittedRequests.decrementAndGet();
+        inFlightBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Grava a parte e só retorna depois que ela estiver durável no modo configurado.
+     * No modo "group" uma parte pequena vai para o arquivo sem fsync e o registro no
+     * log de escrita garante a durabilidade; o lock da parte mantém o log e os
+     * arquivos na mesma ordem que as remoções.
+     */
+    private boolean writePart(String imageName, int partNumber, byte[] data) {
+        ReentrantReadWriteLock.WriteLock lock = partLocks[partStripe(imageName, partNumber)].writeLock();
+        lock.lock();
+        try {
+            boolean sync = "fsync".equals(DURABILITY) || (commitLog != null && commitLog.requiresFileSync(data.length));
+            File file = writePartFile(imageName, partNumber, data, sync);
+            if (commitLog != null) {
+                commitLog.logWrite(imageName, partNumber, data, file, checksumFile(file));
+            }
+            bytesIn.add(data.length);
+            if (Log.isDebugEnabled()) {
+                Log.debug("DataNode " + dataNodeId + ": Parte " + partNumber + " da imagem '" + imageName + "' armazenada.");
+            }
             return true;
         } catch (IOException e) {
             System.err.println("DataNode " + dataNodeId + ": Erro ao armazenar a parte da imagem - " + e.getMessage());
             return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int partStripe(String imageName, int partNumber) {
+        int h = 31 * imageName.hashCode() + partNumber;
+        return Math.floorMod(h ^ (h >>> 16), PART_LOCK_STRIPES);
+    }
+
+    private File writePartFile(String imageName, int partNumber, byte[] data, boolean sync) throws IOException {
+        File file = partFile(imageName, partNumber);
+        boolean created = !file.exists() || !checksumFile(file).exists();
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            // O checksum é calculado enquanto os dados são gravados, bloco a bloco
+            CRC32C crc = new CRC32C();
+            for (int off = 0; off < data.length; off += IO_CHUNK_SIZE) {
+                int len = Math.min(IO_CHUNK_SIZE, data.length - off);
+                crc.update(data, off, len);
+                fos.write(data, off, len);
+            }
+            if (sync) {
+                fos.getFD().sync();
+            }
+            writeChecksum(file, crc.getValue(), sync);
         }
+        if (sync && created) {
+            // Sem o fsync do diretório, um arquivo novo pode sumir numa queda mesmo com o conteúdo no disco
+            GroupCommitLog.syncDirectory(file.getAbsoluteFile().getParentFile());
+        }
+        return file;
     }
 
     @Override
-    public byte[] downloadPart(String imageName, int partNumber) throws RemoteException {
-        File file = new File(STORAGE_DIR + imageName + "_part" + partNumber);
+    public byte[] downloadPart(String imageName, int partNumber, TraceContext trace)
+            throws RemoteException, DataNodeBusyException {
+        long bytes = partFile(imageName, partNumber).length();
+        admit(bytes, downloadLatency);
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("DataNode.downloadPart", trace)) {
+            span.setAttribute("datanode.id", dataNodeId).setAttribute("part.number", partNumber);
+            return readPart(imageName, partNumber);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            release(bytes);
+            downloadLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private byte[] readPart(String imageName, int partNumber) {
+        ReentrantReadWriteLock.ReadLock lock = partLocks[partStripe(imageName, partNumber)].readLock();
+        lock.lock();
+        try {
+            return readPartLocked(imageName, partNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private byte[] readPartLocked(String imageName, int partNumber) {
+        File file = partFile(imageName, partNumber);
         if (file.exists()) {
             try {
                 byte[] data = Files.readAllBytes(file.toPath());
-                System.out.println("DataNode " + dataNodeId + ": Parte " + partNumber + " da imagem '" + imageName + "' enviada.");
+                Long expected = readChecksum(file);
+                if (expected != null) {
+                    CRC32C crc = new CRC32C();
+                    crc.update(data, 0, data.length);
+                    if (crc.getValue() != expected) {
+                        System.err.println("DataNode " + dataNodeId + ": Checksum inválido na parte " + partNumber + " da imagem '" + imageName + "'.");
+                        checksumFailures.increment();
+                        reportCorruption(imageName, partNumber);
+                        return null;
+                    }
+                }
+                bytesOut.add(data.length);
+                if (Log.isDebugEnabled()) {
+                    Log.debug("DataNode " + dataNodeId + ": Parte " + partNumber + " da imagem '" + imageName + "' enviada.");
+                }
                 return data;
             } catch (IOException e) {
                 System.err.println("DataNode " + dataNodeId + ": Erro ao ler a parte da imagem - " + e.getMessage());
@@ -66,44 +332,340 @@ public class DataNode extends UnicastRemoteObject implements DataNodeInterface {
     }
 
     @Override
-    public boolean deletePart(String imageName, int partNumber) throws RemoteException {
-        File file = new File(STORAGE_DIR + imageName + "_part" + partNumber);
-        if (file.exists() && file.delete()) {
-            System.out.println("DataNode " + dataNodeId + ": Parte " + partNumber + " da imagem '" + imageName + "' deletada.");
-            return true;
-        } else {
-            System.out.println("DataNode " + dataNodeId + ": Falha ao deletar a parte " + partNumber + " da imagem '" + imageName + "'.");
-            return false;
+    public boolean deletePart(String imageName, int partNumber, TraceContext trace) throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("DataNode.deletePart", trace)) {
+            span.setAttribute("datanode.id", dataNodeId).setAttribute("part.number", partNumber);
+            return removePart(imageName, partNumber);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            deleteLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private boolean removePart(String imageName, int partNumber) {
+        ReentrantReadWriteLock.WriteLock lock = partLocks[partStripe(imageName, partNumber)].writeLock();
+        lock.lock();
+        try {
+            if (commitLog != null) {
+                try {
+                    commitLog.logDelete(imageName, partNumber);
+                } catch (IOException e) {
+                    System.err.println("DataNode " + dataNodeId + ": Erro ao registrar a remoção no log - " + e.getMessage());
+                    return false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (deletePartFiles(imageName, partNumber)) {
+                if (Log.isDebugEnabled()) {
+                    Log.debug("DataNode " + dataNodeId + ": Parte " + partNumber + " da imagem '" + imageName + "' deletada.");
+                }
+                return true;
+            } else {
+                System.out.println("DataNode " + dataNodeId + ": Falha ao deletar a parte " + partNumber + " da imagem '" + imageName + "'.");
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteParts(List<PartDeletion> parts, TraceContext trace) throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("DataNode.deleteParts", trace)) {
+            span.setAttribute("datanode.id", dataNodeId).setAttribute("parts", parts.size());
+
+            // Trava as faixas de todas as partes do lote (em ordem crescente, sem risco de
+            // deadlock): um upload da mesma parte não passa entre a verificação da idade e
+            // a remoção, nem grava seu registro no log no meio das remoções
+            TreeSet<Integer> stripes = new TreeSet<>();
+            for (PartDeletion part : parts) {
+                stripes.add(partStripe(part.imageName, part.partNumber));
+            }
+            for (int stripe : stripes) {
+                partLocks[stripe].writeLock().lock();
+            }
+            try {
+                return deleteLocked(parts);
+            } finally {
+                for (int stripe : stripes) {
+                    partLocks[stripe].writeLock().unlock();
+                }
+            }
+        } finally {
+            inFlightRequests.decrementAndGet();
+            deleteBatchLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private int deleteLocked(List<PartDeletion> parts) {
+        // Só as partes que existem e não foram regravadas depois que a remoção foi decidida
+        long now = System.currentTimeMillis();
+        List<String> imageNames = new ArrayList<>();
+        List<Integer> partNumbers = new ArrayList<>();
+        for (PartDeletion part : parts) {
+            long modified = partFile(part.imageName, part.partNumber).lastModified();
+            if (modified != 0 && now - modified >= part.minAgeMillis) {
+                imageNames.add(part.imageName);
+                partNumbers.add(part.partNumber);
+            }
+        }
+        if (commitLog != null) {
+            try {
+                commitLog.logDeletes(imageNames, partNumbers);
+            } catch (IOException e) {
+                System.err.println("DataNode " + dataNodeId + ": Erro ao registrar as remoções no log - " + e.getMessage());
+                return 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        int deleted = 0;
+        for (int i = 0; i < imageNames.size(); i++) {
+            if (deletePartFiles(imageNames.get(i), partNumbers.get(i))) {
+                deleted++;
+            }
+        }
+        if (Log.isDebugEnabled()) {
+            Log.debug("DataNode " + dataNodeId + ": " + deleted + " de " + parts.size() + " partes deletadas em lote.");
+        }
+        return deleted;
+    }
+
+    @Override
+    public Map<String, Set<Integer>> listParts(long minAgeMillis, TraceContext trace) throws RemoteException {
+        try (Span span = tracer.startServerSpan("DataNode.listParts", trace)) {
+            span.setAttribute("datanode.id", dataNodeId);
+            Map<String, Set<Integer>> parts = new HashMap<>();
+            File[] files = new File(storageDir).listFiles();
+            if (files == null) {
+                return parts;
+            }
+            long now = System.currentTimeMillis();
+            for (File file : files) {
+                Matcher matcher = PART_FILE_PATTERN.matcher(file.getName());
+                if (matcher.matches() && now - file.lastModified() >= minAgeMillis) {
+                    parts.computeIfAbsent(matcher.group(1), name -> new HashSet<>())
+                            .add(Integer.parseInt(matcher.group(2)));
+                }
+            }
+            return parts;
         }
     }
 
+    private boolean deletePartFiles(String imageName, int partNumber) {
+        File file = partFile(imageName, partNumber);
+        checksumFile(file).delete();
+        return file.exists() && file.delete();
+    }
+
     /**
      * Método para verificar se o DataNode está acessível. 
      * Retorna sempre true se o DataNode puder ser contactado via RMI.
+     * As verificações periódicas do MasterServer chegam sem contexto e não geram spans.
      */
     @Override
-    public boolean ping() throws RemoteException {
+    public boolean ping(TraceContext trace) throws RemoteException {
+        if (trace != null) {
+            tracer.startServerSpan("DataNode.ping", trace).close();
+        }
         return true;
     }
 
+    private static void writeChecksum(File partFile, long checksum, boolean sync) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(checksumFile(partFile))) {
+            fos.write(Long.toHexString(checksum).getBytes());
+            if (sync) {
+                fos.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Lê o checksum armazenado de uma parte.
+     * @return o checksum, ou null se a parte foi gravada antes da existência de checksums.
+     */
+    private static Long readChecksum(File partFile) throws IOException {
+        File file = checksumFile(partFile);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return Long.parseUnsignedLong(new String(Files.readAllBytes(file.toPath())).trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("checksum ilegível em " + file.getName());
+        }
+    }
+
+    /**
+     * Avisa o MasterServer de uma parte corrompida em segundo plano, sem bloquear quem
+     * detectou a corrupção.
+     */
+    private void reportCorruption(String imageName, int partNumber) {
+        MasterServerInterface m = master;
+        if (m == null) {
+            return;
+        }
+        TraceContext trace = Tracer.current();
+        corruptionReporter.execute(() -> {
+            try {
+                m.reportCorruptPart(dataNodeId, imageName, partNumber, trace);
+            } catch (RemoteException e) {
+                System.err.println("DataNode " + dataNodeId + ": Erro ao reportar parte corrompida ao MasterServer - " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Inicia a thread que reverifica periodicamente o checksum de todas as partes armazenadas.
+     * A leitura é limitada a SCRUB_RATE_MBPS para não disputar o disco com as requisições dos clientes.
+     */
+    private void startScrubber() {
+        scrubberThread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Thread.sleep(SCRUB_INTERVAL_SECONDS * 1000L);
+                    scrubAll();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        scrubberThread.setDaemon(true);
+        scrubberThread.start();
+    }
+
+    /**
+     * Encerra as threads de segundo plano do DataNode (scrubber, avisos de corrupção,
+     * log de escrita, métricas e traces), para quando ele roda dentro de outro
+     * processo, como no LocalCluster. Não remove o objeto do RMI.
+     */
+    void shutdown() {
+        closed = true;
+        if (scrubberThread != null) {
+            scrubberThread.interrupt();
+        }
+        corruptionReporter.shutdownNow();
+        if (commitLog != null) {
+            try {
+                commitLog.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        metrics.stopReporting();
+        tracer.shutdown();
+    }
+
+    private void scrubAll() throws InterruptedException {
+        File[] files = new File(storageDir).listFiles();
+        if (files == null) {
+            return;
+        }
+        long bytesPerSecond = Math.max(1, SCRUB_RATE_MBPS) * 1024L * 1024L;
+        long start = System.nanoTime();
+        long bytesRead = 0;
+        int corrupted = 0;
+        byte[] buffer = new byte[IO_CHUNK_SIZE];
+
+        for (File file : files) {
+            Matcher matcher = PART_FILE_PATTERN.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            try {
+                Long expected = readChecksum(file);
+                if (expected == null) {
+                    continue;
+                }
+                CRC32C crc = new CRC32C();
+                try (InputStream in = new FileInputStream(file)) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        crc.update(buffer, 0, n);
+                        bytesRead += n;
+                        // Dorme o necessário para manter a taxa média abaixo do limite
+                        long aheadNanos = bytesRead * 1_000_000_000L / bytesPerSecond - (System.nanoTime() - start);
+                        if (aheadNanos > 0) {
+                            Thread.sleep(aheadNanos / 1_000_000L, (int) (aheadNanos % 1_000_000L));
+                        }
+                    }
+                }
+                String imageName = matcher.group(1);
+                int partNumber = Integer.parseInt(matcher.group(2));
+                if (crc.getValue() != expected && !verifyPart(imageName, partNumber)) {
+                    System.err.println("DataNode " + dataNodeId + ": Scrubber detectou a parte " + partNumber + " da imagem '" + imageName + "' corrompida.");
+                    corrupted++;
+                    checksumFailures.increment();
+                    reportCorruption(imageName, partNumber);
+                }
+            } catch (IOException e) {
+                // A parte pode ter sido removida durante a varredura
+                continue;
+            }
+        }
+        System.out.println("DataNode " + dataNodeId + ": Verificação de integridade concluída (" + corrupted + " partes corrompidas).");
+    }
+
+    /**
+     * Confirma, com o lock da parte, uma divergência encontrada pelo scrubber: a leitura
+     * limitada é feita sem lock e pode ter pego uma regravação no meio.
+     *
+     * @return true se a parte está íntegra (ou foi removida)
+     */
+    private boolean verifyPart(String imageName, int partNumber) throws IOException {
+        ReentrantReadWriteLock.ReadLock lock = partLocks[partStripe(imageName, partNumber)].readLock();
+        lock.lock();
+        try {
+            File file = partFile(imageName, partNumber);
+            Long expected = readChecksum(file);
+            if (expected == null || !file.exists()) {
+                return true;
+            }
+            CRC32C crc = new CRC32C();
+            byte[] data = Files.readAllBytes(file.toPath());
+            crc.update(data, 0, data.length);
+            return crc.getValue() == expected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Uso: java DataNode <DataNodeId>");
+            System.err.println("Uso: java DataNode <DataNodeId> [diretório de armazenamento]");
             System.exit(1);
         }
 
         try {
             String dataNodeId = args[0];
-            DataNode dataNode = new DataNode(dataNodeId);
-            Registry registry = LocateRegistry.getRegistry("192.168.18.149", 1098);
+            DataNode dataNode = args.length > 1 ? new DataNode(dataNodeId, args[1]) : new DataNode(dataNodeId);
+            String host = System.getProperty("master.host", "192.168.18.149");
+            Registry registry = LocateRegistry.getRegistry(host, 1098);
             //registry.rebind("DataNode_" + dataNodeId, dataNode);
             System.out.println("DataNode " + dataNodeId + " registrado no RMI Registry.");
 
-            // Registrar no MasterServer
-            MasterServerInterface master = (MasterServerInterface) registry.lookup("MasterServer");
+            // Registrar no MasterServer (em todas as partições, se o namespace for particionado)
+            MasterServerInterface master = PartitionedMaster.lookup(registry, PartitionedMaster.PARTITIONS);
             master.registerDataNode(dataNodeId, dataNode);
+            dataNode.master = master;
+            dataNode.startScrubber();
             System.out.println("DataNode " + dataNodeId + " registrado no MasterServer.");
 
+            // Envia métricas ao MonitorService, se estiver disponível
+            try {
+                Registry monitorRegistry = LocateRegistry.getRegistry(host, MONITOR_PORT);
+                MonitorServiceInterface monitorService = (MonitorServiceInterface) monitorRegistry.lookup("MonitorService");
+                dataNode.metrics.startReporting(monitorService);
+            } catch (Exception e) {
+                System.err.println("Erro ao conectar com o MonitorService: " + e.getMessage());
+            }
+
         } catch (Exception e) {
             System.err.println("Erro no DataNode: " + e.getMessage());
             e.printStackTrace();
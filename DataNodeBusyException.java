@@ -0,0 +1,18 @@
+/**
+ * Resposta de um DataNode que está acima dos seus limites de admissão (requisições
+ * simultâneas ou bytes em andamento). A requisição não foi executada e pode ser
+ * repetida: em outra réplica imediatamente ou no mesmo nó depois de
+ * retryAfterMillis.
+ */
+public class DataNodeBusyException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    final String dataNodeId;
+    final long retryAfterMillis;
+
+    DataNodeBusyException(String dataNodeId, long retryAfterMillis) {
+        super("DataNode " + dataNodeId + " ocupado; tente novamente em " + retryAfterMillis + " ms");
+        this.dataNodeId = dataNodeId;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
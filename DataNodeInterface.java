@@ -7,11 +7,22 @@
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface DataNodeInterface extends Remote {
-    boolean uploadPart(String imageName, int partNumber, byte[] data) throws RemoteException;
-    byte[] downloadPart(String imageName, int partNumber) throws RemoteException;
-    boolean deletePart(String imageName, int partNumber) throws RemoteException;
+    // O último parâmetro é o contexto de rastreamento do chamador (ou null)
+    // uploadPart e downloadPart recusam a requisição com DataNodeBusyException quando o nó está sobrecarregado
+    boolean uploadPart(String imageName, int partNumber, byte[] data, TraceContext trace)
+            throws RemoteException, DataNodeBusyException;
+    byte[] downloadPart(String imageName, int partNumber, TraceContext trace)
+            throws RemoteException, DataNodeBusyException;
+    boolean deletePart(String imageName, int partNumber, TraceContext trace) throws RemoteException;
+    // Remove várias partes em uma chamada; retorna quantas foram apagadas
+    int deleteParts(List<PartDeletion> parts, TraceContext trace) throws RemoteException;
+    // Inventário das partes armazenadas há pelo menos minAgeMillis (imagem -> números das partes)
+    Map<String, Set<Integer>> listParts(long minAgeMillis, TraceContext trace) throws RemoteException;
 
-    boolean ping() throws RemoteException;
+    boolean ping(TraceContext trace) throws RemoteException;
 }
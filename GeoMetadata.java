@@ -0,0 +1,26 @@
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Metadados geográficos de uma cena, informados no armazenamento:
+ * área coberta (footprint), instante da captura e sensor.
+ */
+public class GeoMetadata implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final BoundingBox footprint;
+    final long captureTimeMillis;
+    final String sensor;
+
+    public GeoMetadata(BoundingBox footprint, long captureTimeMillis, String sensor) {
+        this.footprint = footprint;
+        this.captureTimeMillis = captureTimeMillis;
+        this.sensor = sensor;
+    }
+
+    @Override
+    public String toString() {
+        return "footprint=" + footprint + ", captura=" + Instant.ofEpochMilli(captureTimeMillis)
+                + ", sensor=" + sensor;
+    }
+}
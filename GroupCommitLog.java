@@ -0,0 +1,537 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Log de gravações do DataNode com group commit.
+ *
+ * Cada gravação ou remoção de parte é anexada a um segmento de log sequencial antes
+ * de ser confirmada. Uma única thread recolhe todos os registros pendentes, grava o
+ * lote com uma escrita e faz um único fsync do segmento; só então libera todos os
+ * escritores do lote. Enquanto um fsync está em curso os novos registros se
+ * acumulam na fila e formam o próximo lote, então o custo do fsync é dividido entre
+ * as requisições concorrentes.
+ *
+ * Partes de até datanode.groupCommit.inlineMaxKB vão inteiras para o log e seus
+ * arquivos são gravados sem fsync. Partes maiores não compensam a escrita dupla: o
+ * DataNode faz o fsync do próprio arquivo, como no modo "fsync". Gravações grandes e
+ * remoções só entram no log (como registros sem dados) quando a mesma parte ainda
+ * tem registros em algum segmento, para que a recuperação não reaplique por cima
+ * delas uma versão antiga.
+ *
+ * Quando um segmento passa de datanode.wal.segmentMB, ele é fechado e uma thread em
+ * segundo plano faz o fsync dos arquivos escritos nele e o apaga. Na inicialização,
+ * os segmentos que sobraram de uma queda são reaplicados sobre o diretório de
+ * partes: para cada parte vale o último registro.
+ *
+ * Formato de um registro: [int tamanho][byte tipo][short tamanho do nome][nome UTF-8]
+ * [int parte][dados][int CRC32C de tipo..dados]. Um registro incompleto ou com CRC
+ * inválido marca o fim do segmento (escrita interrompida pela queda).
+ */
+public class GroupCommitLog {
+    private static final byte WRITE = 1;
+    private static final byte DELETE = 2;
+    private static final byte SYNCED_WRITE = 3;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // Espera máxima por mais registros antes de fechar um lote (0 = apenas os que já estão na fila)
+    private static final long WINDOW_NANOS = TimeUnit.MICROSECONDS
+            .toNanos(Long.getLong("datanode.groupCommit.windowMicros", 0));
+    private static final long MAX_BATCH_BYTES = Long.getLong("datanode.groupCommit.maxBatchBytes", 16L * 1024 * 1024);
+    private static final int INLINE_MAX_BYTES = Integer.getInteger("datanode.groupCommit.inlineMaxKB", 32) * 1024;
+    private static final long SEGMENT_BYTES = Long.getLong("datanode.wal.segmentMB", 64) * 1024 * 1024;
+    // Segmentos fechados aguardando checkpoint; além disso as gravações esperam o checkpoint alcançar
+    private static final int MAX_PENDING_CHECKPOINTS = Integer.getInteger("datanode.wal.maxPendingSegments", 4);
+    private static final int SYNC_THREADS = 8;
+
+    /** Aplica um registro do log sobre o diretório de partes durante a recuperação. */
+    interface Applier {
+        void write(String imageName, int partNumber, byte[] data) throws IOException;
+
+        void delete(String imageName, int partNumber);
+    }
+
+    private static final class Record {
+        final ByteBuffer[] buffers;
+        final long size;
+        final String key;
+        final File[] files;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Record(ByteBuffer[] buffers, String key, File[] files) {
+            this.buffers = buffers;
+            this.key = key;
+            this.files = files;
+            long total = 0;
+            for (ByteBuffer buffer : buffers) {
+                total += buffer.remaining();
+            }
+            this.size = total;
+        }
+    }
+
+    // Marca de fim da fila, enfileirada por close()
+    private static final Record CLOSE = new Record(new ByteBuffer[0], null, new File[0]);
+
+    /** Registro lido de um segmento durante a recuperação. */
+    private static final class Operation {
+        final byte type;
+        final String imageName;
+        final int partNumber;
+        final byte[] data;
+
+        Operation(byte type, String imageName, int partNumber, byte[] data) {
+            this.type = type;
+            this.imageName = imageName;
+            this.partNumber = partNumber;
+            this.data = data;
+        }
+    }
+
+    private final File dir;
+    private final String owner;
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<>();
+
+    // Estado do segmento atual, acessado apenas pela thread de commit
+    private FileChannel segment;
+    private final Thread committer;
+    private long segmentId;
+    private long segmentSize;
+    private Set<File> dirtyFiles = new HashSet<>();
+    private Set<String> segmentKeys = new HashSet<>();
+
+    // Parte -> último segmento com um registro dela; a entrada sai quando o segmento é descartado
+    private final Map<String, Long> loggedParts = new ConcurrentHashMap<>();
+    // Depois de um checkpoint com erro nenhum segmento é descartado, para não perder a ordem entre eles
+    private volatile boolean checkpointFailed;
+
+    private final LongAdder batches;
+    private final LongAdder records;
+    private final LatencyHistogram fsyncLatency;
+
+    private final ExecutorService checkpointer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "wal-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore checkpointSlots = new Semaphore(MAX_PENDING_CHECKPOINTS);
+
+    // fsyncs concorrentes do checkpoint: o sistema de arquivos agrupa os que chegam juntos
+    private static final ExecutorService syncPool = Executors.newFixedThreadPool(SYNC_THREADS, r -> {
+        Thread thread = new Thread(r, "wal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Abre o log no diretório dado, reaplicando antes os segmentos deixados por uma
+     * execução anterior, e inicia a thread de commit.
+     */
+    GroupCommitLog(File dir, String owner, Metrics metrics, Applier applier) throws IOException {
+        this.dir = dir;
+        this.owner = owner;
+        this.batches = metrics.counter("datanode_wal_batches_total", "Lotes gravados no log (um fsync por lote)");
+        this.records = metrics.counter("datanode_wal_records_total", "Registros gravados no log");
+        this.fsyncLatency = metrics.histogram("datanode_wal_fsync_seconds", "Latência do fsync de um lote do log");
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("não foi possível criar " + dir);
+        }
+        segmentId = recover(applier) + 1;
+        openSegment();
+
+        committer = new Thread(this::commitLoop, "group-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Indica se uma parte deste tamanho fica fora do log, caso em que o chamador
+     * precisa fazer o fsync dos arquivos dela antes de chamar {@link #logWrite}.
+     */
+    boolean requiresFileSync(int length) {
+        return length > INLINE_MAX_BYTES;
+    }
+
+    /**
+     * Registra a gravação de uma parte e espera o fsync do lote que a contém.
+     * Chamadas para a mesma parte não podem ser concorrentes.
+     * @param files arquivos escritos pela gravação
+     */
+    void logWrite(String imageName, int partNumber, byte[] data, File... files)
+            throws IOException, InterruptedException {
+        String key = key(imageName, partNumber);
+        if (!requiresFileSync(data.length)) {
+            await(append(encode(WRITE, imageName, partNumber, data), key, files));
+        } else if (loggedParts.containsKey(key)) {
+            await(append(encode(SYNCED_WRITE, imageName, partNumber, new byte[0]), key, new File[0]));
+        }
+    }
+
+    /** Registra a remoção de uma parte, se ela ainda tiver registros no log. */
+    void logDelete(String imageName, int partNumber) throws IOException, InterruptedException {
+        String key = key(imageName, partNumber);
+        if (loggedParts.containsKey(key)) {
+            await(append(encode(DELETE, imageName, partNumber, new byte[0]), key, new File[0]));
+        }
+    }
+
+    /**
+     * Registra a remoção de várias partes de uma vez: os registros entram juntos na
+     * fila e normalmente saem no mesmo lote, com um único fsync.
+     */
+    void logDeletes(List<String> imageNames, List<Integer> partNumbers) throws IOException, InterruptedException {
+        List<Record> appended = new ArrayList<>();
+        for (int i = 0; i < imageNames.size(); i++) {
+            String key = key(imageNames.get(i), partNumbers.get(i));
+            if (loggedParts.containsKey(key)) {
+                appended.add(append(encode(DELETE, imageNames.get(i), partNumbers.get(i), new byte[0]), key,
+                        new File[0]));
+            }
+        }
+        for (Record record : appended) {
+            await(record);
+        }
+    }
+
+    private static String key(String imageName, int partNumber) {
+        return imageName + "_part" + partNumber;
+    }
+
+    private Record append(ByteBuffer[] buffers, String key, File[] files) {
+        Record record = new Record(buffers, key, files);
+        pending.add(record);
+        return record;
+    }
+
+    private static void await(Record record) throws IOException, InterruptedException {
+        try {
+            record.done.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Codifica o registro sem copiar os dados: cabeçalho, dados e CRC vão em buffers
+     * separados e são gravados juntos por uma escrita vetorizada.
+     */
+    private static ByteBuffer[] encode(byte type, String imageName, int partNumber, byte[] data) {
+        byte[] name = imageName.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 2 + name.length + 4 + data.length;
+        ByteBuffer header = ByteBuffer.allocate(4 + bodyLength - data.length);
+        header.putInt(bodyLength).put(type).putShort((short) name.length).put(name).putInt(partNumber);
+        header.flip();
+
+        CRC32C crc = new CRC32C();
+        crc.update(header.array(), 4, header.limit() - 4);
+        crc.update(data, 0, data.length);
+        ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) crc.getValue());
+        trailer.flip();
+        return new ByteBuffer[] { header, ByteBuffer.wrap(data), trailer };
+    }
+
+    private void commitLoop() {
+        List<Record> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.clear();
+                Record first = pending.take();
+                if (first == CLOSE) {
+                    return;
+                }
+                batch.add(first);
+                long bytes = first.size;
+                long deadline = System.nanoTime() + WINDOW_NANOS;
+                while (bytes < MAX_BATCH_BYTES) {
+                    long remaining = deadline - System.nanoTime();
+                    Record next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == CLOSE) {
+                        // Grava o lote atual e encerra na próxima volta
+                        pending.add(CLOSE);
+                        break;
+                    }
+                    batch.add(next);
+                    bytes += next.size;
+                }
+                commit(batch, bytes);
+            } catch (InterruptedException e) {
+                // A thread de commit vive até close()
+            }
+        }
+    }
+
+    /**
+     * Grava os registros já enfileirados, encerra a thread de commit e fecha o
+     * segmento atual. Não deve haver gravações concorrentes.
+     */
+    void close() throws InterruptedException {
+        pending.add(CLOSE);
+        committer.join();
+        checkpointer.shutdown();
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            System.err.println(owner + ": Erro ao fechar o log de escrita - " + e.getMessage());
+        }
+    }
+
+    private void commit(List<Record> batch, long bytes) {
+        try {
+            if (segment == null) {
+                // A abertura falhou depois da última rotação
+                openSegment();
+            }
+            List<ByteBuffer> buffers = new ArrayList<>(batch.size() * 3);
+            for (Record record : batch) {
+                buffers.addAll(Arrays.asList(record.buffers));
+            }
+            ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+            long written = 0;
+            while (written < bytes) {
+                written += segment.write(array);
+            }
+            long start = System.nanoTime();
+            segment.force(false);
+            fsyncLatency.record(System.nanoTime() - start);
+            segmentSize += bytes;
+            batches.increment();
+            records.add(batch.size());
+            for (Record record : batch) {
+                dirtyFiles.addAll(Arrays.asList(record.files));
+                segmentKeys.add(record.key);
+                loggedParts.put(record.key, segmentId);
+                record.done.complete(null);
+            }
+        } catch (IOException e) {
+            System.err.println(owner + ": Erro ao gravar o log de escrita - " + e.getMessage());
+            for (Record record : batch) {
+                record.done.completeExceptionally(e);
+            }
+            // O segmento pode ter ficado com um registro pela metade, que encerraria a
+            // leitura dele na recuperação, e depois de um fsync com erro não se sabe o
+            // que chegou ao disco: os próximos lotes vão para um segmento novo. O
+            // antigo termina com os lotes já confirmados, todos antes da falha.
+            if (segment != null) {
+                rotate();
+            }
+            return;
+        }
+        if (segmentSize >= SEGMENT_BYTES) {
+            rotate();
+        }
+    }
+
+    /**
+     * Fecha o segmento atual e abre o próximo. O fsync dos arquivos de partes escritos
+     * no segmento fechado e a remoção dele ficam para a thread de checkpoint, fora do
+     * caminho das gravações. O segmento fechado nunca volta a receber registros.
+     */
+    private void rotate() {
+        FileChannel closed = segment;
+        File closedFile = segmentFile(segmentId);
+        Set<File> files = dirtyFiles;
+        Set<String> keys = segmentKeys;
+        long closedId = segmentId;
+        segment = null;
+        segmentId++;
+        dirtyFiles = new HashSet<>();
+        segmentKeys = new HashSet<>();
+        try {
+            openSegment();
+        } catch (IOException e) {
+            // O próximo lote tenta abrir o segmento de novo
+            System.err.println(owner + ": Erro ao abrir um novo segmento do log - " + e.getMessage());
+        }
+        checkpointSlots.acquireUninterruptibly();
+        checkpointer.execute(() -> {
+            try {
+                closed.close();
+                if (checkpointFailed) {
+                    return;
+                }
+                syncFiles(files);
+                if (!closedFile.delete()) {
+                    System.err.println(owner + ": Não foi possível apagar " + closedFile);
+                    checkpointFailed = true;
+                    return;
+                }
+                for (String key : keys) {
+                    loggedParts.remove(key, closedId);
+                }
+            } catch (IOException e) {
+                // O segmento fica no disco e será reaplicado na próxima inicialização
+                checkpointFailed = true;
+                System.err.println(owner + ": Erro no checkpoint do log - " + e.getMessage());
+            } finally {
+                checkpointSlots.release();
+            }
+        });
+    }
+
+    private void openSegment() throws IOException {
+        segment = FileChannel.open(segmentFile(segmentId).toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        segmentSize = 0;
+        syncDirectory(dir);
+    }
+
+    private File segmentFile(long id) {
+        return new File(dir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Faz o fsync dos arquivos dados e dos diretórios que os contêm, para que o
+     * conteúdo e as entradas de diretório sobrevivam a uma queda. Arquivos já
+     * removidos são ignorados.
+     */
+    private static void syncFiles(Set<File> files) throws IOException {
+        Set<File> dirs = new HashSet<>();
+        List<Future<Void>> syncs = new ArrayList<>(files.size());
+        for (File file : files) {
+            syncs.add(syncPool.submit(() -> {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                } catch (NoSuchFileException e) {
+                    // Removido depois de gravado; a remoção também está no log
+                }
+                return null;
+            }));
+            dirs.add(file.getAbsoluteFile().getParentFile());
+        }
+        for (Future<Void> sync : syncs) {
+            try {
+                sync.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("checkpoint interrompido");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+    }
+
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Nem todo sistema permite fsync de diretórios (Windows, por exemplo)
+        }
+    }
+
+    /**
+     * Reaplica, em ordem, os segmentos deixados por uma execução anterior e os apaga.
+     * @return o maior identificador de segmento encontrado, ou -1 se não havia nenhum
+     */
+    private long recover(Applier applier) throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return -1;
+        }
+        Arrays.sort(files, Comparator.comparingLong(GroupCommitLog::segmentIdOf));
+        // Último registro de cada parte, na ordem do log
+        Map<String, Operation> latest = new LinkedHashMap<>();
+        for (File file : files) {
+            readSegment(file, latest);
+        }
+        int applied = 0;
+        for (Operation op : latest.values()) {
+            if (op.type == WRITE) {
+                applier.write(op.imageName, op.partNumber, op.data);
+                applied++;
+            } else if (op.type == DELETE) {
+                applier.delete(op.imageName, op.partNumber);
+                applied++;
+            }
+            // SYNCED_WRITE: o arquivo já estava durável quando a gravação foi confirmada
+        }
+        // O Applier grava com fsync, então os segmentos já podem ser descartados
+        for (File file : files) {
+            file.delete();
+        }
+        syncDirectory(dir);
+        System.out.println(owner + ": " + applied + " registros reaplicados de " + files.length
+                + " segmento(s) do log.");
+        return segmentIdOf(files[files.length - 1]);
+    }
+
+    private static long segmentIdOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void readSegment(File file, Map<String, Operation> latest) throws IOException {
+        long remaining = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] body;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    // Tamanho impossível: lixo de uma escrita interrompida
+                    if (length < 7 || length > remaining - 8) {
+                        break;
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                    checksum = in.readInt();
+                    remaining -= length + 8;
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(body, 0, body.length);
+                if ((int) crc.getValue() != checksum) {
+                    System.err.println(owner + ": Registro inválido no fim de " + file.getName() + "; descartado.");
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                byte type = buffer.get();
+                byte[] name = new byte[buffer.getShort() & 0xffff];
+                buffer.get(name);
+                String imageName = new String(name, StandardCharsets.UTF_8);
+                int partNumber = buffer.getInt();
+                String key = key(imageName, partNumber);
+                latest.remove(key);
+                latest.put(key, new Operation(type, imageName, partNumber,
+                        Arrays.copyOfRange(body, buffer.position(), body.length)));
+            }
+        }
+    }
+}
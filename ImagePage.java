@@ -0,0 +1,35 @@
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uma página de nomes de imagens: da listagem, em ordem lexicográfica de nome, ou
+ * do resultado de uma busca.
+ *
+ * nextStartAfter é o token de continuação: passado como startAfter na próxima
+ * chamada de listImages, retorna a página seguinte. É null na última página.
+ *
+ * unavailablePartitions lista as partições do namespace que não responderam; se
+ * não estiver vazia, a página traz só os nomes das demais.
+ */
+public class ImagePage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final List<String> names;
+    final String nextStartAfter;
+    final List<Integer> unavailablePartitions;
+
+    ImagePage(List<String> names, String nextStartAfter) {
+        this(names, nextStartAfter, Collections.emptyList());
+    }
+
+    ImagePage(List<String> names, String nextStartAfter, List<Integer> unavailablePartitions) {
+        this.names = names;
+        this.nextStartAfter = nextStartAfter;
+        this.unavailablePartitions = unavailablePartitions;
+    }
+
+    boolean isPartial() {
+        return !unavailablePartitions.isEmpty();
+    }
+}
@@ -0,0 +1,404 @@
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gerador de carga com vários clientes concorrentes.
+ *
+ * Executa uma mistura configurável de leituras, escritas e remoções sobre um
+ * conjunto de imagens com popularidade Zipf, em malha fechada (cada cliente
+ * dispara a próxima operação ao terminar a anterior) ou em malha aberta com taxa
+ * fixa (--rate). Em malha aberta a latência é medida a partir do instante em que
+ * a operação deveria ter começado, de modo que filas no sistema aparecem nos percentis.
+ *
+ * Uso:
+ *   java LoadGenerator [--local N] [--replication R] [--host H] [--port P] [--partitions N]
+ *                      [--clients N] [--duration S] [--warmup S] [--rate OPS]
+ *                      [--mix LEITURA:ESCRITA:REMOCAO] [--sizes 50k:0.5,1m:0.5]
+ *                      [--parts N] [--keys N] [--zipf S] [--no-preload]
+ *
+ * Com --local N, inicia no próprio processo um MasterServer e N DataNodes. Com
+ * --partitions N, distribui as operações entre os N masters de um namespace
+ * particionado (ver PartitionedMaster).
+ */
+public class LoadGenerator {
+
+    private static final String[] OPERATIONS = { "read", "write", "delete" };
+    private static final int READ = 0;
+    private static final int WRITE = 1;
+    private static final int DELETE = 2;
+
+    /**
+     * Parâmetros de uma execução.
+     */
+    static class Config {
+        int localDataNodes = 0;
+        int replicationFactor = 2;
+        String host = "localhost";
+        int port = 1097;
+        int partitions = PartitionedMaster.PARTITIONS;
+        int clients = 8;
+        int durationSeconds = 30;
+        int warmupSeconds = 5;
+        double rate = 0; // operações/s no total; 0 = malha fechada
+        double[] mix = { 70, 25, 5 };
+        int[] sizes = { 50 * 1024 };
+        double[] sizeWeights = { 1.0 };
+        int numParts = 5;
+        int keys = 1000;
+        double zipfExponent = 0.99;
+        boolean preload = true;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--no-preload")) {
+                    config.preload = false;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Valor ausente para " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--local": config.localDataNodes = Integer.parseInt(value); break;
+                    case "--replication": config.replicationFactor = Integer.parseInt(value); break;
+                    case "--host": config.host = value; break;
+                    case "--port": config.port = Integer.parseInt(value); break;
+                    case "--partitions": config.partitions = Integer.parseInt(value); break;
+                    case "--clients": config.clients = Integer.parseInt(value); break;
+                    case "--duration": config.durationSeconds = Integer.parseInt(value); break;
+                    case "--warmup": config.warmupSeconds = Integer.parseInt(value); break;
+                    case "--rate": config.rate = Double.parseDouble(value); break;
+                    case "--mix": config.mix = parseMix(value); break;
+                    case "--sizes": config.parseSizes(value); break;
+                    case "--parts": config.numParts = Integer.parseInt(value); break;
+                    case "--keys": config.keys = Integer.parseInt(value); break;
+                    case "--zipf": config.zipfExponent = Double.parseDouble(value); break;
+                    default: throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                }
+            }
+            return config;
+        }
+
+        private static double[] parseMix(String value) {
+            String[] fields = value.split(":");
+            if (fields.length != OPERATIONS.length) {
+                throw new IllegalArgumentException("--mix deve ter o formato LEITURA:ESCRITA:REMOCAO");
+            }
+            double[] mix = new double[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                mix[i] = Double.parseDouble(fields[i]);
+            }
+            return mix;
+        }
+
+        private void parseSizes(String value) {
+            String[] entries = value.split(",");
+            sizes = new int[entries.length];
+            sizeWeights = new double[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                String[] fields = entries[i].split(":");
+                sizes[i] = parseSize(fields[0]);
+                sizeWeights[i] = fields.length > 1 ? Double.parseDouble(fields[1]) : 1.0;
+            }
+        }
+
+        private static int parseSize(String value) {
+            String lower = value.trim().toLowerCase();
+            int multiplier = 1;
+            if (lower.endsWith("k")) {
+                multiplier = 1024;
+            } else if (lower.endsWith("m")) {
+                multiplier = 1024 * 1024;
+            }
+            if (multiplier != 1) {
+                lower = lower.substring(0, lower.length() - 1);
+            }
+            return Integer.parseInt(lower) * multiplier;
+        }
+    }
+
+    /**
+     * Amostrador de chaves com distribuição Zipf, por busca binária na CDF pré-calculada.
+     */
+    static class ZipfDistribution {
+        private final double[] cdf;
+
+        ZipfDistribution(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+
+    /**
+     * Estatísticas de um tipo de operação.
+     */
+    static class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        // Leituras e remoções de imagens inexistentes (a popularidade Zipf sorteia nomes já removidos)
+        final AtomicLong misses = new AtomicLong();
+    }
+
+    private final Config config;
+    private final MasterServerInterface master;
+    private final ZipfDistribution keyDistribution;
+    private final byte[][] payloads;
+    private final double[] cumulativeMix;
+    private final double[] cumulativeSizeWeights;
+    private final OperationStats[] stats = new OperationStats[OPERATIONS.length];
+    private long measuredNanos; // do fim do aquecimento até a última operação terminar
+
+    LoadGenerator(Config config, MasterServerInterface master) {
+        this.config = config;
+        this.master = master;
+        this.keyDistribution = new ZipfDistribution(config.keys, config.zipfExponent);
+        this.cumulativeMix = cumulative(config.mix);
+        this.cumulativeSizeWeights = cumulative(config.sizeWeights);
+        // Os dados das imagens são gerados uma única vez, fora da região medida
+        Random random = new Random(42);
+        payloads = new byte[config.sizes.length][];
+        for (int i = 0; i < config.sizes.length; i++) {
+            payloads[i] = new byte[config.sizes[i]];
+            random.nextBytes(payloads[i]);
+        }
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new OperationStats();
+        }
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] result = new double[weights.length];
+        double sum = 0;
+        for (double weight : weights) {
+            sum += weight;
+        }
+        double acc = 0;
+        for (int i = 0; i < weights.length; i++) {
+            acc += weights[i] / sum;
+            result[i] = acc;
+        }
+        return result;
+    }
+
+    private static int pick(double[] cumulative, double value) {
+        for (int i = 0; i < cumulative.length; i++) {
+            if (value < cumulative[i]) {
+                return i;
+            }
+        }
+        return cumulative.length - 1;
+    }
+
+    private static String imageName(int key) {
+        return "carga_" + key + ".jpg";
+    }
+
+    private byte[] nextPayload(Random random) {
+        return payloads[pick(cumulativeSizeWeights, random.nextDouble())];
+    }
+
+    /**
+     * Executa uma operação aleatória e, fora do aquecimento, registra sua latência
+     * medida a partir de {@code intendedStart}.
+     */
+    private void runOperation(Random random, long intendedStart, boolean record) {
+        int operation = pick(cumulativeMix, random.nextDouble());
+        String imageName = imageName(keyDistribution.sample(random));
+        AtomicLong misses = new AtomicLong();
+        boolean ok;
+        try {
+            switch (operation) {
+                case READ:
+                    ok = Client.fetchImage(master, imageName, true, misses) != null;
+                    break;
+                case WRITE:
+                    ok = master.storeImage(imageName, nextPayload(random), config.numParts, null, null);
+                    break;
+                default:
+                    // deleteImage só retorna false para imagens inexistentes
+                    ok = master.deleteImage(imageName, null);
+                    if (!ok) {
+                        misses.incrementAndGet();
+                    }
+                    break;
+            }
+        } catch (Exception e) {
+            ok = false;
+        }
+        if (record) {
+            stats[operation].latency.record(System.nanoTime() - intendedStart);
+            if (misses.get() > 0) {
+                stats[operation].misses.incrementAndGet();
+            } else if (!ok) {
+                stats[operation].errors.incrementAndGet();
+            }
+        }
+    }
+
+    private void preload() throws InterruptedException {
+        System.out.println("Pré-carregando " + config.keys + " imagens...");
+        ExecutorService executor = Executors.newFixedThreadPool(config.clients);
+        for (int key = 0; key < config.keys; key++) {
+            final int k = key;
+            executor.execute(() -> {
+                try {
+                    master.storeImage(imageName(k), nextPayload(ThreadLocalRandom.current()), config.numParts, null, null);
+                } catch (Exception e) {
+                    System.err.println("Falha ao pré-carregar " + imageName(k) + ": " + e.getMessage());
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    void run() throws InterruptedException {
+        if (config.preload) {
+            preload();
+        }
+        long totalSeconds = config.warmupSeconds + config.durationSeconds;
+        long startNanos = System.nanoTime();
+        long warmupEnd = startNanos + TimeUnit.SECONDS.toNanos(config.warmupSeconds);
+        long end = startNanos + TimeUnit.SECONDS.toNanos(totalSeconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.clients);
+        if (config.rate > 0) {
+            runOpenLoop(executor, warmupEnd, end);
+        } else {
+            runClosedLoop(executor, warmupEnd, end);
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        measuredNanos = System.nanoTime() - warmupEnd;
+    }
+
+    private void runClosedLoop(ExecutorService executor, long warmupEnd, long end) throws InterruptedException {
+        for (int c = 0; c < config.clients; c++) {
+            final long seed = c;
+            executor.execute(() -> {
+                Random random = new Random(seed);
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    runOperation(random, now, now >= warmupEnd);
+                }
+            });
+        }
+    }
+
+    private void runOpenLoop(ExecutorService executor, long warmupEnd, long end) throws InterruptedException {
+        long intervalNanos = (long) (1_000_000_000L / config.rate);
+        long next = System.nanoTime();
+        while (next < end) {
+            long sleepNanos = next - System.nanoTime();
+            if (sleepNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+            final long intendedStart = next;
+            final boolean record = next >= warmupEnd;
+            executor.execute(() -> runOperation(ThreadLocalRandom.current(), intendedStart, record));
+            next += intervalNanos;
+        }
+    }
+
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        // Vazão sobre o tempo medido, que inclui a espera pelas operações em andamento no fim
+        double measuredSeconds = measuredNanos / 1e9;
+        sb.append(String.format("%-8s %10s %8s %9s %10s %10s %10s %10s %10s%n",
+                "operação", "total", "erros", "ausentes", "ops/s", "p50 (ms)", "p99 (ms)", "p99.9 (ms)",
+                "máx (ms)"));
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            LatencyHistogram latency = stats[i].latency;
+            sb.append(String.format("%-8s %10d %8d %9d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    OPERATIONS[i], latency.count(), stats[i].errors.get(), stats[i].misses.get(),
+                    latency.count() / measuredSeconds,
+                    millis(latency.percentile(50)), millis(latency.percentile(99)),
+                    millis(latency.percentile(99.9)), millis(latency.max())));
+        }
+        ReplicaSelector replicas = Client.replicaSelector;
+        if (replicas.reads() > 0) {
+            sb.append(String.format("hedges: %d de %d leituras de partes (%.2f%%), %d vencidos pela segunda réplica%n",
+                    replicas.hedges(), replicas.reads(), 100.0 * replicas.hedges() / replicas.reads(),
+                    replicas.hedgeWins()));
+            if (replicas.busyRejections() > 0) {
+                sb.append(String.format("réplicas ocupadas: %d recusas, %d esperas com todas as réplicas ocupadas%n",
+                        replicas.busyRejections(), replicas.busyBackoffs()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Executa a carga contra um MasterServer já conectado e retorna o relatório.
+     */
+    static String run(MasterServerInterface master, Config config) throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator(config, master);
+        generator.run();
+        return generator.report();
+    }
+
+    public static void main(String[] args) {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: java LoadGenerator [--local N] [--replication R] [--host H] [--port P] "
+                    + "[--partitions N] [--clients N] [--duration S] [--warmup S] [--rate OPS] [--mix L:E:R] "
+                    + "[--sizes 50k:0.5,1m:0.5] [--parts N] [--keys N] [--zipf S] [--no-preload]");
+            System.exit(1);
+            return;
+        }
+
+        LocalCluster cluster = null;
+        try {
+            MasterServerInterface master;
+            if (config.localDataNodes > 0) {
+                cluster = new LocalCluster(config.localDataNodes, config.replicationFactor);
+                master = cluster.master();
+                System.out.println("Cluster local iniciado com " + config.localDataNodes + " DataNodes.");
+            } else {
+                Registry registry = LocateRegistry.getRegistry(config.host, config.port);
+                master = PartitionedMaster.lookup(registry, config.partitions);
+            }
+
+            System.out.println((config.rate > 0 ? "Malha aberta a " + config.rate + " ops/s" : "Malha fechada")
+                    + " com " + config.clients + " clientes por " + config.durationSeconds + " s"
+                    + " (aquecimento de " + config.warmupSeconds + " s).");
+            System.out.println(run(master, config));
+        } catch (Exception e) {
+            System.err.println("Erro no gerador de carga: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (cluster != null) {
+                cluster.close();
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Cluster em processo (MasterServer + DataNodes) para execuções autocontidas,
+ * como o gerador de carga e os benchmarks.
+ * Todas as chamadas passam pelos stubs RMI (loopback) e cada DataNode grava
+ * em um diretório temporário próprio. close() encerra as threads do master e dos
+ * DataNodes e remove os diretórios, de modo que vários clusters podem ser criados
+ * em sequência na mesma JVM.
+ */
+public class LocalCluster {
+    private static final int REGISTRY_PORT = 1098;
+
+    private final MasterServer masterServer;
+    private final MasterServerInterface master;
+    private final List<DataNode> dataNodes = new ArrayList<>();
+    private final List<String> dataNodeIds = new ArrayList<>();
+    private final List<DataNodeInterface> dataNodeStubs = new ArrayList<>();
+    private final Path storageRoot;
+
+    public LocalCluster(int numDataNodes, int replicationFactor) throws Exception {
+        ensureRegistry();
+        storageRoot = Files.createTempDirectory("mygeoeyes-local");
+        masterServer = new MasterServer(replicationFactor);
+        master = (MasterServerInterface) UnicastRemoteObject.toStub(masterServer);
+        for (int i = 0; i < numDataNodes; i++) {
+            addDataNode("local" + i);
+        }
+    }
+
+    private static void ensureRegistry() {
+        try {
+            LocateRegistry.createRegistry(REGISTRY_PORT);
+        } catch (RemoteException e) {
+            // Já existe um registry nesta JVM ou nesta máquina
+        }
+    }
+
+    private void addDataNode(String dataNodeId) throws Exception {
+        DataNode dataNode = new DataNode(dataNodeId, storageRoot.resolve(dataNodeId).toString());
+        DataNodeInterface stub = (DataNodeInterface) UnicastRemoteObject.toStub(dataNode);
+        master.registerDataNode(dataNodeId, stub);
+        dataNodes.add(dataNode);
+        dataNodeIds.add(dataNodeId);
+        dataNodeStubs.add(stub);
+    }
+
+    public MasterServerInterface master() {
+        return master;
+    }
+
+    public DataNodeInterface dataNode(int index) {
+        return dataNodeStubs.get(index);
+    }
+
+    public String dataNodeId(int index) {
+        return dataNodeIds.get(index);
+    }
+
+    public void close() {
+        for (DataNode dataNode : dataNodes) {
+            unexport(dataNode);
+            dataNode.shutdown();
+        }
+        unexport(masterServer);
+        masterServer.shutdown();
+        try (Stream<Path> paths = Files.walk(storageRoot)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            System.err.println("Falha ao remover " + storageRoot + ": " + e.getMessage());
+        }
+    }
+
+    private static void unexport(Remote remote) {
+        try {
+            UnicastRemoteObject.unexportObject(remote, true);
+        } catch (NoSuchObjectException e) {
+            // já removido
+        }
+    }
+}
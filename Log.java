@@ -0,0 +1,22 @@
+/**
+ * Controle de nível de log.
+ * Mensagens por parte (upload, download, remoção) são de nível DEBUG e só são
+ * impressas com -Dlog.level=DEBUG, pois no caminho crítico o próprio println
+ * tem custo relevante sob carga.
+ */
+public final class Log {
+    private static final boolean DEBUG = "DEBUG".equalsIgnoreCase(System.getProperty("log.level", "INFO"));
+
+    private Log() {
+    }
+
+    public static boolean isDebugEnabled() {
+        return DEBUG;
+    }
+
+    public static void debug(String message) {
+        if (DEBUG) {
+            System.out.println(message);
+        }
+    }
+}
@@ -3,6 +3,18 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
 
 /**
  * Classe que implementa o servidor mestre responsável por gerenciar o
@@ -11,24 +23,216 @@ import java.util.*;
  * imagens.
  */
 public class MasterServer extends UnicastRemoteObject implements MasterServerInterface {
-    private Map<String, DataNodeInterface> dataNodes = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, DataNodeInterface> dataNodes = new ConcurrentHashMap<>();
     /**
      * Mapa que armazena as partes da imagem:
      * chave: nome da imagem
      * valor: Mapa (parte -> dataNodeId)
+     *
+     * O mapa interno não muda depois de publicado; as listas de réplicas são
+     * CopyOnWriteArrayList, então leitores nunca precisam de lock. Quem altera uma
+     * imagem (gravação, remoção, recriação de réplicas) segura imageLock(nome).
      */
-    private Map<String, Map<Integer, List<String>>> imageParts = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, Map<Integer, List<String>>> imageParts = new ConcurrentHashMap<>();
+
+    /**
+     * Metadados das imagens armazenadas como pirâmide de tiles (cada tile é uma
+     * parte em imageParts).
+     */
+    private final Map<String, TilePyramid> tilePyramids = new ConcurrentHashMap<>();
+
+    /**
+     * Locks por imagem distribuídos em faixas (lock striping): operações sobre a
+     * mesma imagem são serializadas, e imagens diferentes raramente disputam o mesmo
+     * lock. Nunca se segura mais de um ao mesmo tempo.
+     */
+    private static final int IMAGE_LOCK_STRIPES = 1024;
+    private final Object[] imageLocks = new Object[IMAGE_LOCK_STRIPES];
+
+    /**
+     * Nomes das imagens em ordem lexicográfica, para a listagem paginada sem
+     * copiar nem travar imageParts. Atualizado junto com imageParts.
+     */
+    private final NavigableSet<String> imageNames = new ConcurrentSkipListSet<>();
+
+    // Tamanho máximo de uma página de listImages
+    private static final int MAX_LIST_PAGE_SIZE = 1000;
+
+    // Índice espacial dos metadados geográficos das imagens
+    private final SpatialIndex spatialIndex = new SpatialIndex();
 
     private int replicationFactor;
+
+    /**
+     * Quórum de escrita: número de réplicas de cada parte que precisam confirmar
+     * antes de storeImage retornar (entre 1 e replicationFactor; padrão: todas).
+     */
+    private final int writeQuorum;
+
+    // Intervalo entre novas tentativas de completar partes sub-replicadas
+    private static final int REPLICATION_RETRY_SECONDS = Integer.getInteger("master.replication.retrySeconds", 10);
+
+    // Novas tentativas de um upload recusado por DataNode ocupado quando não há mais nós alternativos
+    private static final int BUSY_MAX_RETRIES = Integer.getInteger("master.busy.maxRetries", 5);
+
+    /**
+     * Estado da replicação de uma parte: réplicas confirmadas e uploads ainda em
+     * andamento. Usado para esperar o quórum de escrita e, depois, para acompanhar
+     * a parte enquanto ela tiver menos réplicas que o replicationFactor.
+     */
+    private static final class PartReplication {
+        final String imageName;
+        final int partNumber;
+        final List<String> replicas;
+        private int inFlight;
+        // DataNodes que já receberam (ou tentaram receber) uma réplica desta gravação
+        private final Set<String> claimed = new HashSet<>();
+
+        PartReplication(String imageName, int partNumber, int uploads) {
+            this(imageName, partNumber, new CopyOnWriteArrayList<>());
+            this.inFlight = uploads;
+        }
+
+        PartReplication(String imageName, int partNumber, List<String> replicas) {
+            this.imageName = imageName;
+            this.partNumber = partNumber;
+            this.replicas = replicas;
+        }
+
+        String key() {
+            return imageName + "#" + partNumber;
+        }
+
+        synchronized void uploadFinished(String dataNodeId, boolean ok) {
+            inFlight--;
+            if (ok) {
+                replicas.add(dataNodeId);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Espera até 'quorum' réplicas confirmarem ou todos os uploads terminarem.
+         */
+        synchronized boolean awaitQuorum(int quorum) throws InterruptedException {
+            while (replicas.size() < quorum && inFlight > 0) {
+                wait();
+            }
+            return replicas.size() >= quorum;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        /** Espera todos os uploads desta gravação terminarem, inclusive os que passaram do quórum. */
+        synchronized void awaitUploads() throws InterruptedException {
+            while (inFlight > 0) {
+                wait();
+            }
+        }
+
+        synchronized void claim(String dataNodeId) {
+            claimed.add(dataNodeId);
+        }
+
+        /**
+         * Reserva o primeiro candidato que ainda não recebeu uma réplica desta parte.
+         * @return o DataNode reservado, ou null se todos já foram usados
+         */
+        synchronized String claimAlternative(List<String> candidates) {
+            for (String candidate : candidates) {
+                if (claimed.add(candidate)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Partes com menos réplicas que o replicationFactor (chave: imagem#parte)
+    private final Map<String, PartReplication> underReplicated = new ConcurrentHashMap<>();
+    private final BlockingQueue<PartReplication> replicationQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * Partes com uploads ainda em andamento, por imagem. Com quórum menor que o
+     * fator de replicação, storeImage retorna (e solta o lock da imagem) antes de
+     * todos os uploads terminarem; a próxima gravação ou remoção do mesmo nome
+     * espera por eles, senão um upload atrasado sobrescreveria a versão nova com
+     * bytes da antiga. Alterado só dentro de compute().
+     */
+    private final Map<String, List<PartReplication>> unfinishedUploads = new ConcurrentHashMap<>();
+
+    // Uploads de réplicas; os que passam do quórum terminam aqui em segundo plano
+    private final ExecutorService uploadExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "replica-upload");
+        thread.setDaemon(true);
+        return thread;
+    });
     private MonitorServiceInterface monitorService;
+    private Thread heartbeatThread;
+    private Thread replicationThread;
+    private volatile boolean closed;
 
     // Mapa de listas de assinantes por tipo de evento
-    private Map<String, List<SubscriberInterface>> subscribersByEventType = Collections
-            .synchronizedMap(new HashMap<>());
+    private final Map<String, CopyOnWriteArrayList<SubscriberInterface>> subscribersByEventType =
+            new ConcurrentHashMap<>();
 
     // Lista de tipos de eventos disponíveis
     private static final List<String> EVENT_TYPES = Arrays.asList("IMAGE_ADDED", "IMAGE_DELETED");
 
+    // Métricas enviadas periodicamente ao MonitorService
+    /**
+     * Partição do namespace atendida por este master (-Dmaster.partition=k entre
+     * -Dmaster.partitions=N); ver PartitionedMaster.
+     */
+    private static final int PARTITION = Integer.getInteger("master.partition", 0);
+    private static final String INSTANCE_NAME = PartitionedMaster.PARTITIONS == 1 ? "master" : "master-" + PARTITION;
+
+    private final Metrics metrics = new Metrics(INSTANCE_NAME);
+    private final LatencyHistogram storeImageLatency = metrics.histogram("master_store_image_seconds",
+            "Latência de storeImage");
+    private final LatencyHistogram storeTiledImageLatency = metrics.histogram("master_store_tiled_image_seconds",
+            "Latência de storeTiledImage");
+    private final LatencyHistogram locateTileLatency = metrics.histogram("master_locate_tile_seconds",
+            "Latência de locateTile");
+    private final LatencyHistogram listImagesLatency = metrics.histogram("master_list_images_seconds",
+            "Latência de listImages");
+    private final LatencyHistogram getImageReplicasLatency = metrics.histogram("master_get_image_replicas_seconds",
+            "Latência de getImageReplicas");
+    private final LatencyHistogram getImagePartsLatency = metrics.histogram("master_get_image_parts_seconds",
+            "Latência de getImageParts");
+    private final LatencyHistogram queryImagesLatency = metrics.histogram("master_query_images_seconds",
+            "Latência de queryImages");
+    private final LatencyHistogram deleteImageLatency = metrics.histogram("master_delete_image_seconds",
+            "Latência de deleteImage");
+    private final LatencyHistogram heartbeatLatency = metrics.histogram("master_heartbeat_seconds",
+            "Duração de uma rodada de verificação dos DataNodes");
+    private final LatencyHistogram redistributionLatency = metrics.histogram("master_redistribution_seconds",
+            "Duração da redistribuição de dados de um DataNode falho");
+    private final LongAdder bytesIn = metrics.counter("master_bytes_in_total",
+            "Bytes de imagens recebidos em storeImage");
+    private final LongAdder heartbeatFailures = metrics.counter("master_heartbeat_failures_total",
+            "DataNodes que não responderam à verificação periódica");
+    private final LongAdder writeQuorumFailures = metrics.counter("master_write_quorum_failures_total",
+            "Gravações recusadas por não atingir o quórum de escrita");
+    private final LongAdder dataNodeBusy = metrics.counter("master_datanode_busy_total",
+            "Requisições recusadas por DataNodes ocupados");
+    private final LongAdder busyBackoffs = metrics.counter("master_busy_backoffs_total",
+            "Esperas antes de repetir um upload em um DataNode ocupado");
+    private final LongAdder replicasCreated = metrics.counter("master_rereplicated_parts_total",
+            "Réplicas recriadas após falha ou corrupção");
+    private final LongAdder rereplicatedBytes = metrics.counter("master_rereplicated_bytes_total",
+            "Bytes copiados para recriar réplicas");
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+    private final Tracer tracer = new Tracer(INSTANCE_NAME);
+
+    // Remoção em segundo plano das partes de imagens apagadas e das partes órfãs
+    private final PartReclaimer reclaimer = new PartReclaimer(dataNodes, this::isReferenced,
+            imageName -> PartitionedMaster.partitionOf(imageName, PartitionedMaster.PARTITIONS) == PARTITION,
+            metrics, tracer);
+
     /**
      * Construtor do MasterServer.
      * 
@@ -38,10 +242,20 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
      */
     protected MasterServer(int replicationFactor) throws RemoteException {
         this.replicationFactor = replicationFactor;
+        this.writeQuorum = Math.max(1, Math.min(replicationFactor,
+                Integer.getInteger("master.writeQuorum", replicationFactor)));
         // Inicializa o mapa de assinantes com listas vazias
         for (String eventType : EVENT_TYPES) {
-            subscribersByEventType.put(eventType, Collections.synchronizedList(new ArrayList<>()));
+            subscribersByEventType.put(eventType, new CopyOnWriteArrayList<>());
+        }
+        for (int i = 0; i < IMAGE_LOCK_STRIPES; i++) {
+            imageLocks[i] = new Object();
         }
+        metrics.gauge("master_datanodes", "DataNodes registrados", dataNodes::size);
+        metrics.gauge("master_images", "Imagens armazenadas", imageParts::size);
+        metrics.gauge("master_in_flight_requests", "Operações de metadados em andamento", inFlightRequests::get);
+        metrics.gauge("master_under_replicated_parts", "Partes com menos réplicas que o fator de replicação",
+                underReplicated::size);
 
         // Conecta-se ao MonitorService
         try {
@@ -53,11 +267,21 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
             System.err.println("Erro ao conectar com o MonitorService: " + e.getMessage());
         }
         startDataNodeHeartbeatCheck();
+        startReplicationQueue();
+        reclaimer.start();
+        if (monitorService != null) {
+            metrics.startReporting(monitorService);
+        }
+    }
+
+    private Object imageLock(String imageName) {
+        int h = imageName.hashCode();
+        return imageLocks[Math.floorMod(h ^ (h >>> 16), IMAGE_LOCK_STRIPES)];
     }
 
     private void startDataNodeHeartbeatCheck() {
-        Thread monitorThread = new Thread(() -> {
-            while (true) {
+        heartbeatThread = new Thread(() -> {
+            while (!closed) {
                 try {
                     Thread.sleep(5000);
                     checkDataNodeHealth();
@@ -65,16 +289,17 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
                 }
             }
         });
-        monitorThread.setDaemon(true);
-        monitorThread.start();
+        heartbeatThread.setDaemon(true);
+        heartbeatThread.start();
     }
 
     private void checkDataNodeHealth() {
+        long start = System.nanoTime();
         List<String> nodesToRemove = new ArrayList<>();
         for (Map.Entry<String, DataNodeInterface> entry : dataNodes.entrySet()) {
             String nodeId = entry.getKey();
             try {
-                if (!entry.getValue().ping()) {
+                if (!entry.getValue().ping(null)) {
                     System.err.println("DataNode " + nodeId + " inacessível. Notificando MonitorService.");
                     nodesToRemove.add(nodeId);
                 }
@@ -84,6 +309,9 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
             }
         }
 
+        heartbeatLatency.record(System.nanoTime() - start);
+        heartbeatFailures.add(nodesToRemove.size());
+
         for (String nodeId : nodesToRemove) {
             // Notifica o MonitorService
             notifyMonitorService(nodeId);
@@ -97,6 +325,7 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
         System.out.println("Datanode " + dataNodeId + " registrado com sucesso");
         // Adicionar o DataNode ao mapa dataNodes
         dataNodes.put(dataNodeId, dataNode);
+        reclaimer.nodeAvailable(dataNodeId);
     }
 
     /**
@@ -114,54 +343,107 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
     }
 
     @Override
-    public List<String> listImages() throws RemoteException {
-        return new ArrayList<>(imageParts.keySet());
+    public ImagePage listImages(String prefix, String startAfter, int limit, TraceContext trace)
+            throws RemoteException {
+        long start = System.nanoTime();
+        try (Span span = tracer.startServerSpan("MasterServer.listImages", trace)) {
+            span.setAttribute("prefix", prefix).setAttribute("limit", limit);
+            return listImagePage(prefix == null ? "" : prefix, startAfter, Math.min(limit, MAX_LIST_PAGE_SIZE));
+        } finally {
+            listImagesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Percorre o índice de nomes a partir do ponto de continuação. O custo é
+     * proporcional ao tamanho da página, não ao número de imagens.
+     */
+    private ImagePage listImagePage(String prefix, String startAfter, int limit) {
+        List<String> names = new ArrayList<>();
+        if (limit <= 0) {
+            return new ImagePage(names, null);
+        }
+        NavigableSet<String> tail = startAfter != null && startAfter.compareTo(prefix) >= 0
+                ? imageNames.tailSet(startAfter, false)
+                : imageNames.tailSet(prefix, true);
+        for (String name : tail) {
+            if (!name.startsWith(prefix)) {
+                break;
+            }
+            if (names.size() == limit) {
+                // Há pelo menos mais uma imagem: o último nome devolvido é o token da próxima página
+                return new ImagePage(names, names.get(names.size() - 1));
+            }
+            names.add(name);
+        }
+        return new ImagePage(names, null);
     }
 
     @Override
-    public Map<Integer, DataNodeInterface> getImageParts(String imageName) throws RemoteException {
+    public Map<Integer, DataNodeInterface> getImageParts(String imageName, TraceContext trace) throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("MasterServer.getImageParts", trace)) {
+            span.setAttribute("image.name", imageName);
+            return findImageParts(imageName);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            getImagePartsLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<Integer, Map<String, DataNodeInterface>> getImageReplicas(String imageName, TraceContext trace)
+            throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("MasterServer.getImageReplicas", trace)) {
+            span.setAttribute("image.name", imageName);
+            return findImageReplicas(imageName);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            getImageReplicasLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Réplicas de cada parte nos DataNodes registrados, sem pingá-los: a escolha
+     * da réplica fica com o cliente, que mede a latência de cada DataNode.
+     */
+    private Map<Integer, Map<String, DataNodeInterface>> findImageReplicas(String imageName) {
+        Map<Integer, List<String>> parts = imageParts.get(imageName);
+        if (parts == null) {
+            return null;
+        }
+        Map<Integer, Map<String, DataNodeInterface>> result = new HashMap<>();
+        for (Map.Entry<Integer, List<String>> entry : parts.entrySet()) {
+            Map<String, DataNodeInterface> replicas = new LinkedHashMap<>();
+            for (String dataNodeId : entry.getValue()) {
+                DataNodeInterface dataNode = dataNodes.get(dataNodeId);
+                if (dataNode != null) {
+                    replicas.put(dataNodeId, dataNode);
+                }
+            }
+            if (replicas.isEmpty()) {
+                System.err.println("Nenhuma réplica registrada da parte " + entry.getKey() + " da imagem "
+                        + imageName + ".");
+                return null;
+            }
+            result.put(entry.getKey(), replicas);
+        }
+        return result;
+    }
+
+    private Map<Integer, DataNodeInterface> findImageParts(String imageName) {
         Map<Integer, DataNodeInterface> partsMapResult = new HashMap<>();
         Map<Integer, List<String>> parts = imageParts.get(imageName);
         if (parts != null) {
             for (Map.Entry<Integer, List<String>> entry : parts.entrySet()) {
                 int partNumber = entry.getKey();
-                List<String> replicas = entry.getValue();
-
-                DataNodeInterface chosenDataNode = null;
-
-                // Tentar achar um DataNode acessível entre as réplicas
-                for (String dataNodeId : replicas) {
-                    DataNodeInterface dataNode = dataNodes.get(dataNodeId);
-                    if (dataNode == null) {
-                        System.err.println("DataNode " + dataNodeId + " não encontrado. Notificando o MonitorService.");
-                        notifyMonitorService(dataNodeId);
-                        // Tenta o próximo DataNode
-                        continue;
-                    }
-                    try {
-                        // Verifica se o DataNode está acessível
-                        if (dataNode.ping()) {
-                            chosenDataNode = dataNode;
-                            break; // Achou um DataNode acessível, pode parar de procurar
-                        } else {
-                            System.err
-                                    .println("DataNode " + dataNodeId + " inacessível. Notificando o MonitorService.");
-                            notifyMonitorService(dataNodeId);
-                        }
-                    } catch (RemoteException e) {
-                        System.err.println(
-                                "Falha ao contatar DataNode " + dataNodeId + ". Notificando o MonitorService.");
-                        notifyMonitorService(dataNodeId);
-                    }
-                }
-
+                DataNodeInterface chosenDataNode = chooseReplica(imageName, partNumber, entry.getValue());
                 if (chosenDataNode == null) {
-                    // Não encontramos nenhum DataNode acessível para esta parte
-                    System.err.println("Nenhuma réplica acessível da parte " + partNumber + " da imagem " + imageName
-                            + " encontrada.");
                     return null;
                 }
-
                 partsMapResult.put(partNumber, chosenDataNode);
             }
             return partsMapResult;
@@ -170,8 +452,59 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
         }
     }
 
+    /**
+     * Escolhe a primeira réplica acessível de uma parte.
+     * 
+     * @return o DataNode escolhido, ou null se nenhuma réplica responder
+     */
+    private DataNodeInterface chooseReplica(String imageName, int partNumber, List<String> replicas) {
+        // Tentar achar um DataNode acessível entre as réplicas
+        for (String dataNodeId : replicas) {
+            DataNodeInterface dataNode = dataNodes.get(dataNodeId);
+            if (dataNode == null) {
+                System.err.println("DataNode " + dataNodeId + " não encontrado. Notificando o MonitorService.");
+                notifyMonitorService(dataNodeId);
+                // Tenta o próximo DataNode
+                continue;
+            }
+            try {
+                // Verifica se o DataNode está acessível
+                if (pingDataNode(dataNodeId, dataNode)) {
+                    return dataNode; // Achou um DataNode acessível, pode parar de procurar
+                } else {
+                    System.err.println("DataNode " + dataNodeId + " inacessível. Notificando o MonitorService.");
+                    notifyMonitorService(dataNodeId);
+                }
+            } catch (RemoteException e) {
+                System.err.println("Falha ao contatar DataNode " + dataNodeId + ". Notificando o MonitorService.");
+                notifyMonitorService(dataNodeId);
+            }
+        }
+
+        // Não encontramos nenhum DataNode acessível para esta parte
+        System.err.println("Nenhuma réplica acessível da parte " + partNumber + " da imagem " + imageName
+                + " encontrada.");
+        return null;
+    }
+
+    /**
+     * Faz ping em um DataNode, registrando a chamada como um span do trace corrente.
+     */
+    private boolean pingDataNode(String dataNodeId, DataNodeInterface dataNode) throws RemoteException {
+        try (Span span = tracer.startClientSpan("DataNode.ping")) {
+            span.setAttribute("datanode.id", dataNodeId);
+            try {
+                return dataNode.ping(span.context());
+            } catch (RemoteException e) {
+                span.setError();
+                throw e;
+            }
+        }
+    }
+
     private void redistributeDataFromFailedNode(String failedNodeId) {
         System.out.println("Redistribuindo dados do DataNode falho: " + failedNodeId);
+        long start = System.nanoTime();
     
         // Percorrer todas as imagens e suas partes
         for (Map.Entry<String, Map<Integer, List<String>>> imageEntry : imageParts.entrySet()) {
@@ -181,180 +514,212 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
             for (Map.Entry<Integer, List<String>> partEntry : partsMap.entrySet()) {
                 int partNumber = partEntry.getKey();
                 List<String> replicas = partEntry.getValue();
-    
-                // Remove o nó falho da lista de réplicas, se presente
-                boolean removed = replicas.remove(failedNodeId);
-                if (!removed) {
+                if (!replicas.contains(failedNodeId)) {
                     // Essa parte não estava armazenada no nó falho, então não precisa relocar
                     continue;
                 }
-    
-                // Verifica se a parte ainda possui réplicas suficientes
-                if (replicas.size() >= replicationFactor) {
-                    // Já tem réplicas suficientes, não precisa fazer nada
-                    continue;
-                }
-    
-                // Tentar recriar réplicas para atingir o replicationFactor
-                int replicasNeeded = replicationFactor - replicas.size();
-                
-                // Se não temos nenhuma réplica, a parte está irrecuperável (sem backup)
-                if (replicas.isEmpty()) {
-                    System.err.println("A parte " + partNumber + " da imagem " + imageName 
-                                       + " foi perdida, pois todas as réplicas estavam no DataNode falho " + failedNodeId);
-                    // Poderia marcar a imagem como corrompida, ou apenas seguir
-                    continue;
-                }
-    
-                // Temos pelo menos uma réplica, pegar a primeira como fonte para copiar a parte
-                String sourceNodeId = replicas.get(0);
-                DataNodeInterface sourceNode = dataNodes.get(sourceNodeId);
-                if (sourceNode == null) {
-                    System.err.println("Não foi possível acessar o DataNode " + sourceNodeId 
-                                       + " para replicar a parte " + partNumber + " da imagem " + imageName);
-                    continue;
-                }
-    
-                // Baixar a parte do DataNode fonte
-                byte[] partData = null;
-                try {
-                    partData = sourceNode.downloadPart(imageName, partNumber);
-                } catch (RemoteException e) {
-                    System.err.println("Falha ao baixar a parte " + partNumber + " da imagem " + imageName 
-                                       + " do DataNode " + sourceNodeId + ": " + e.getMessage());
-                    continue;
-                }
-    
-                if (partData == null) {
-                    System.err.println("A parte " + partNumber + " da imagem " + imageName 
-                                       + " não pode ser recuperada do DataNode " + sourceNodeId);
-                    continue;
-                }
-    
-                // Tentar encontrar DataNodes disponíveis para criar novas réplicas
-                // Selecionar DataNodes que não estejam na lista de réplicas
-                List<String> availableNodes = new ArrayList<>(dataNodes.keySet());
-                availableNodes.removeAll(replicas);  // remover nós já contendo a parte
-                availableNodes.remove(failedNodeId); // remover o nó falho
-                // O sourceNodeId já está em replicas, então não há problema duplicar
-    
-                for (String candidateNodeId : availableNodes) {
-                    if (replicasNeeded <= 0) {
-                        break; // já alcançamos o número necessário de réplicas
+
+                // A imagem pode ter sido removida ou regravada enquanto percorríamos o mapa;
+                // sob o lock, só mexemos na lista de réplicas se ela ainda for a atual
+                synchronized (imageLock(imageName)) {
+                    if (imageParts.get(imageName) != partsMap) {
+                        break;
                     }
-    
-                    DataNodeInterface candidateNode = dataNodes.get(candidateNodeId);
-                    if (candidateNode == null) {
+                    replicas.remove(failedNodeId);
+
+                    // Se não temos nenhuma réplica, a parte está irrecuperável (sem backup)
+                    if (replicas.isEmpty()) {
+                        System.err.println("A parte " + partNumber + " da imagem " + imageName
+                                + " foi perdida, pois todas as réplicas estavam no DataNode falho " + failedNodeId);
+                        // Poderia marcar a imagem como corrompida, ou apenas seguir
                         continue;
                     }
-    
-                    try {
-                        if (candidateNode.uploadPart(imageName, partNumber, partData)) {
-                            replicas.add(candidateNodeId);
-                            replicasNeeded--;
-                            System.out.println("Criada nova réplica da parte " + partNumber 
-                                               + " da imagem " + imageName 
-                                               + " no DataNode " + candidateNodeId);
-                        }
-                    } catch (RemoteException e) {
-                        System.err.println("Falha ao enviar réplica da parte " + partNumber + " da imagem " 
-                                           + imageName + " para o DataNode " + candidateNodeId + ": " + e.getMessage());
-                    }
                 }
-    
-                if (replicas.size() < replicationFactor) {
-                    System.err.println("Não foi possível restaurar completamente o número de réplicas da parte " 
-                                       + partNumber + " da imagem " + imageName 
-                                       + ". Réplicas atuais: " + replicas.size() 
-                                       + " de " + replicationFactor);
+
+                if (!restoreReplicas(imageName, partNumber, replicas, failedNodeId)) {
+                    trackUnderReplicated(new PartReplication(imageName, partNumber, replicas));
                 }
             }
         }
+        redistributionLatency.record(System.nanoTime() - start);
         System.out.println("Redistribuição de dados do DataNode falho " + failedNodeId + " concluída.");
     }
     
-    @Override
-    public boolean storeImage(String imageName, byte[] imageData, int numParts) throws RemoteException {
-        try {
-            // Cálculo do tamanho de cada parte
-            int partSize = imageData.length / numParts;
+    /**
+     * Recria réplicas de uma parte até atingir o replicationFactor, copiando os
+     * dados de uma das réplicas restantes. Deve ser chamado sem imageLock(imageName):
+     * o download é feito fora do lock, porque um DataNode que encontra a parte
+     * corrompida chama reportCorruptPart, que precisa do mesmo lock. Os uploads e a
+     * atualização da lista de réplicas são feitos sob o lock, e só se a lista ainda
+     * for a atual.
+     * 
+     * @param imageName      nome da imagem
+     * @param partNumber     número da parte
+     * @param replicas       lista (mutável) de DataNodes que ainda possuem a parte
+     * @param excludedNodeId DataNode que não deve receber a nova réplica (ou null)
+     * @return true se a parte ficou com 'replicationFactor' réplicas, ou se a
+     *         imagem foi removida ou regravada e não há mais o que restaurar
+     */
+    private boolean restoreReplicas(String imageName, int partNumber, List<String> replicas, String excludedNodeId) {
+        List<String> sources;
+        synchronized (imageLock(imageName)) {
+            if (!isCurrentReplicaList(imageName, partNumber, replicas)
+                    || replicas.size() >= replicationFactor) {
+                // Imagem removida/regravada ou já com réplicas suficientes
+                return true;
+            }
+            sources = new ArrayList<>(replicas);
+        }
+
+        // Baixar a parte de alguma réplica restante (o DataNode verifica o checksum
+        // antes de enviar, então uma réplica corrompida retorna null)
+        byte[] partData = null;
+        for (String sourceNodeId : sources) {
+            DataNodeInterface sourceNode = dataNodes.get(sourceNodeId);
+            if (sourceNode == null) {
+                System.err.println("Não foi possível acessar o DataNode " + sourceNodeId
+                        + " para replicar a parte " + partNumber + " da imagem " + imageName);
+                continue;
+            }
+            try {
+                partData = sourceNode.downloadPart(imageName, partNumber, Tracer.current());
+            } catch (DataNodeBusyException e) {
+                // Tenta outra réplica; se todas estiverem ocupadas, a fila de replicação repete depois
+                dataNodeBusy.increment();
+                continue;
+            } catch (RemoteException e) {
+                System.err.println("Falha ao baixar a parte " + partNumber + " da imagem " + imageName
+                        + " do DataNode " + sourceNodeId + ": " + e.getMessage());
+                continue;
+            }
+            if (partData != null) {
+                break;
+            }
+            System.err.println("A parte " + partNumber + " da imagem " + imageName
+                    + " não pode ser recuperada do DataNode " + sourceNodeId);
+        }
 
-            // Mapa para armazenar as partes e suas réplicas
-            Map<Integer, List<String>> partsMap = new HashMap<>();
+        if (partData == null) {
+            return false;
+        }
 
-            // Obter a lista de DataNodes disponíveis
-            List<String> dataNodeIds = new ArrayList<>(dataNodes.keySet());
-            if (dataNodeIds.isEmpty()) {
-                System.err.println("Nenhum DataNode disponível para armazenar a imagem.");
-                return false;
+        synchronized (imageLock(imageName)) {
+            if (!isCurrentReplicaList(imageName, partNumber, replicas)) {
+                // Regravada ou removida durante o download: os dados baixados são da versão antiga
+                return true;
             }
+            return uploadReplicas(imageName, partNumber, partData, replicas, excludedNodeId);
+        }
+    }
 
-            // Embaralha a lista de DataNodes para distribuir as partes de forma mais
-            // aleatória
-            Collections.shuffle(dataNodeIds);
-
-            // Para cada parte da imagem
-            for (int i = 0; i < numParts; i++) {
-                int start = i * partSize;
-                int end = (i == numParts - 1) ? imageData.length : start + partSize;
-                byte[] partData = Arrays.copyOfRange(imageData, start, end);
-
-                // Vamos tentar colocar essa parte em 'replicationFactor' DataNodes distintos
-                List<String> replicas = new ArrayList<>();
-
-                // Se não houver DataNodes suficientes para atingir replicationFactor,
-                // armazenaremos em quantos for possível (ideal é ter replicationFactor ≤ número
-                // de DataNodes)
-                int replicasToCreate = Math.min(replicationFactor, dataNodeIds.size());
-
-                // Itera sobre a lista de DataNodes disponíveis para criar réplicas
-                // Caso a lista seja menor que replicationFactor, criará menos réplicas.
-                // Aqui usamos o índice 'i' para espalhar as partes, mas poderíamos usar outro
-                // critério.
-                for (int r = 0; r < replicasToCreate; r++) {
-                    // Seleciona um DataNode com base no índice (i e r). Por exemplo:
-                    // Poderíamos fazer um cálculo modular: (i + r) % dataNodeIds.size()
-                    // para pegar DataNodes diferentes por parte.
-                    String dataNodeId = dataNodeIds.get((i + r) % dataNodeIds.size());
-                    DataNodeInterface dataNode = dataNodes.get(dataNodeId);
-
-                    if (dataNode == null) {
-                        System.err.println("DataNode " + dataNodeId
-                                + " não encontrado durante o upload. Notificando o MonitorService.");
-                        notifyMonitorService(dataNodeId);
-                        return false;
-                    }
+    /**
+     * Indica se 'replicas' ainda é a lista de réplicas registrada para a parte.
+     * Deve ser chamado com imageLock(imageName) seguro.
+     */
+    private boolean isCurrentReplicaList(String imageName, int partNumber, List<String> replicas) {
+        Map<Integer, List<String>> parts = imageParts.get(imageName);
+        return parts != null && parts.get(partNumber) == replicas;
+    }
 
-                    try {
-                        if (dataNode.uploadPart(imageName, i, partData)) {
-                            replicas.add(dataNodeId);
-                        } else {
-                            System.err.println("Falha ao armazenar a parte " + i + " da imagem '" + imageName
-                                    + "' no DataNode " + dataNodeId + ".");
-                            // Se falhar em uma réplica, tenta continuar com as demais réplicas?
-                            // Aqui poderíamos optar por falhar totalmente ou continuar.
-                            // Vamos continuar tentando com outros DataNodes.
-                        }
-                    } catch (RemoteException e) {
-                        System.err.println("DataNode " + dataNodeId
-                                + " inacessível durante o upload. Notificando o MonitorService.");
-                        notifyMonitorService(dataNodeId);
-                        // Continua a tentar com outros DataNodes
+    /**
+     * Envia a parte a DataNodes que ainda não a possuem até atingir o replicationFactor.
+     * Deve ser chamado com imageLock(imageName) seguro.
+     */
+    private boolean uploadReplicas(String imageName, int partNumber, byte[] partData, List<String> replicas,
+            String excludedNodeId) {
+        int replicasNeeded = replicationFactor - replicas.size();
+
+        // Tentar encontrar DataNodes disponíveis para criar novas réplicas
+        // Selecionar DataNodes que não estejam na lista de réplicas
+        List<String> availableNodes = new ArrayList<>(dataNodes.keySet());
+        availableNodes.removeAll(replicas); // remover nós já contendo a parte
+        availableNodes.remove(excludedNodeId); // remover o nó falho
+
+        for (String candidateNodeId : availableNodes) {
+            if (replicasNeeded <= 0) {
+                break; // já alcançamos o número necessário de réplicas
+            }
+
+            DataNodeInterface candidateNode = dataNodes.get(candidateNodeId);
+            if (candidateNode == null) {
+                continue;
+            }
+
+            try {
+                // Uma remoção pendente dessa réplica apagaria a cópia nova
+                reclaimer.forget(candidateNodeId, imageName, partNumber);
+                if (candidateNode.uploadPart(imageName, partNumber, partData, Tracer.current())) {
+                    replicas.add(candidateNodeId);
+                    replicasNeeded--;
+                    replicasCreated.increment();
+                    rereplicatedBytes.add(partData.length);
+                    if (Log.isDebugEnabled()) {
+                        Log.debug("Criada nova réplica da parte " + partNumber
+                                + " da imagem " + imageName
+                                + " no DataNode " + candidateNodeId);
                     }
                 }
+            } catch (DataNodeBusyException e) {
+                dataNodeBusy.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RemoteException e) {
+                System.err.println("Falha ao enviar réplica da parte " + partNumber + " da imagem "
+                        + imageName + " para o DataNode " + candidateNodeId + ": " + e.getMessage());
+            }
+        }
+
+        if (replicas.size() < replicationFactor) {
+            System.err.println("Não foi possível restaurar completamente o número de réplicas da parte "
+                    + partNumber + " da imagem " + imageName
+                    + ". Réplicas atuais: " + replicas.size()
+                    + " de " + replicationFactor);
+            return false;
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean storeImage(String imageName, byte[] imageData, int numParts, GeoMetadata metadata,
+            TraceContext trace) throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("MasterServer.storeImage", trace)) {
+            span.setAttribute("image.name", imageName).setAttribute("image.parts", numParts);
+            return doStoreImage(imageName, imageData, numParts, metadata);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            storeImageLatency.record(System.nanoTime() - start);
+        }
+    }
 
-                if (replicas.isEmpty()) {
-                    // Não conseguimos armazenar nem uma réplica dessa parte
-                    System.err.println("Falha ao armazenar a parte " + i + " da imagem '" + imageName
-                            + "' em quaisquer DataNodes.");
+    private boolean doStoreImage(String imageName, byte[] imageData, int numParts, GeoMetadata metadata) {
+        try {
+            // Cálculo do tamanho de cada parte
+            int partSize = imageData.length / numParts;
+            bytesIn.add(imageData.length);
+
+            // Gravações e remoções da mesma imagem não se intercalam: as partes têm o
+            // mesmo nome nos DataNodes
+            synchronized (imageLock(imageName)) {
+                awaitUnfinishedUploads(imageName);
+                // Remoções pendentes de uma versão anterior não podem alcançar as partes novas
+                reclaimer.forget(imageName);
+                List<PartReplication> parts = placeParts(imageName, numParts, i -> {
+                    int start = i * partSize;
+                    int end = (i == numParts - 1) ? imageData.length : start + partSize;
+                    return Arrays.copyOfRange(imageData, start, end);
+                });
+                if (parts == null) {
                     return false;
                 }
 
-                partsMap.put(i, replicas);
+                // Armazena o mapeamento de todas as partes da imagem
+                tilePyramids.remove(imageName);
+                commitParts(imageName, parts);
+                indexMetadata(imageName, metadata);
             }
-
-            // Armazena o mapeamento de todas as partes da imagem
-            imageParts.put(imageName, partsMap);
             System.out.println("Imagem '" + imageName + "' armazenada com sucesso, com fator de replicação "
                     + replicationFactor + ".");
 
@@ -369,37 +734,458 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
     }
 
     @Override
-    public boolean deleteImage(String imageName) throws RemoteException {
-        Map<Integer, List<String>> parts = imageParts.remove(imageName);
-        if (parts != null) {
-            for (Map.Entry<Integer, List<String>> entry : parts.entrySet()) {
-                int partNumber = entry.getKey();
-                List<String> replicaNodes = entry.getValue();
-
-                // Deletar a parte em cada DataNode que a possui
-                for (String dataNodeId : replicaNodes) {
-                    DataNodeInterface dataNode = dataNodes.get(dataNodeId);
-                    if (dataNode == null) {
-                        System.err.println("DataNode " + dataNodeId
-                                + " não encontrado durante a exclusão. Notificando o MonitorService.");
-                        notifyMonitorService(dataNodeId);
+    public boolean storeTiledImage(String imageName, byte[] imageData, int tileSize, GeoMetadata metadata,
+            TraceContext trace) throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("MasterServer.storeTiledImage", trace)) {
+            span.setAttribute("image.name", imageName).setAttribute("tile.size", tileSize);
+            return doStoreTiledImage(imageName, imageData, tileSize, metadata);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            storeTiledImageLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private boolean doStoreTiledImage(String imageName, byte[] imageData, int tileSize, GeoMetadata metadata) {
+        if (tileSize <= 0) {
+            System.err.println("Tamanho de tile inválido para a imagem '" + imageName + "': " + tileSize);
+            return false;
+        }
+        try {
+            bytesIn.add(imageData.length);
+
+            // Decodifica a imagem uma única vez e gera todos os níveis da pirâmide
+            List<byte[]> tiles = new ArrayList<>();
+            TilePyramid pyramid;
+            try (Span span = tracer.startSpan("TilePyramid.cut")) {
+                pyramid = TilePyramid.cut(imageData, tileSize, tiles);
+                span.setAttribute("tiles", tiles.size());
+            }
+            if (pyramid == null) {
+                System.err.println("Formato da imagem '" + imageName + "' não suportado para divisão em tiles.");
+                return false;
+            }
+
+            synchronized (imageLock(imageName)) {
+                awaitUnfinishedUploads(imageName);
+                reclaimer.forget(imageName);
+                List<PartReplication> parts = placeParts(imageName, tiles.size(), tiles::get);
+                if (parts == null) {
+                    return false;
+                }
+
+                tilePyramids.put(imageName, pyramid);
+                commitParts(imageName, parts);
+                indexMetadata(imageName, metadata);
+            }
+            System.out.println("Imagem '" + imageName + "' armazenada em " + tiles.size() + " tiles ("
+                    + pyramid.levels + " níveis de zoom), com fator de replicação " + replicationFactor + ".");
+
+            // Notifica assinantes do evento IMAGE_ADDED
+            notifySubscribers("IMAGE_ADDED", imageName);
+
+            return true;
+        } catch (Exception e) {
+            System.err.println("Erro ao armazenar a imagem em tiles: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Atualiza o índice espacial com os metadados de uma imagem recém-armazenada.
+     * Uma imagem regravada sem metadados deixa de aparecer nas buscas.
+     */
+    private void indexMetadata(String imageName, GeoMetadata metadata) {
+        if (metadata != null && metadata.footprint != null) {
+            spatialIndex.put(imageName, metadata);
+        } else {
+            spatialIndex.remove(imageName);
+        }
+    }
+
+    @Override
+    public ImagePage queryImages(BoundingBox bbox, long fromMillis, long toMillis, int limit, TraceContext trace)
+            throws RemoteException {
+        long start = System.nanoTime();
+        try (Span span = tracer.startServerSpan("MasterServer.queryImages", trace)) {
+            span.setAttribute("bbox", bbox).setAttribute("limit", limit);
+            return new ImagePage(spatialIndex.query(bbox, fromMillis, toMillis, limit), null);
+        } finally {
+            queryImagesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public TilePyramid getTilePyramid(String imageName, TraceContext trace) throws RemoteException {
+        try (Span span = tracer.startServerSpan("MasterServer.getTilePyramid", trace)) {
+            span.setAttribute("image.name", imageName);
+            return tilePyramids.get(imageName);
+        }
+    }
+
+    @Override
+    public TileLocation locateTile(String imageName, int z, int x, int y, TraceContext trace) throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("MasterServer.locateTile", trace)) {
+            span.setAttribute("image.name", imageName).setAttribute("tile", z + "/" + x + "/" + y);
+            TilePyramid pyramid = tilePyramids.get(imageName);
+            Map<Integer, List<String>> parts = imageParts.get(imageName);
+            if (pyramid == null || parts == null) {
+                return null;
+            }
+            int partNumber = pyramid.partNumber(z, x, y);
+            List<String> replicas = parts.get(partNumber);
+            if (replicas == null) {
+                return null;
+            }
+            DataNodeInterface dataNode = chooseReplica(imageName, partNumber, replicas);
+            return dataNode == null ? null : new TileLocation(partNumber, dataNode);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            locateTileLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Envia cada parte de uma imagem para 'replicationFactor' DataNodes distintos,
+     * em paralelo. A parte é considerada gravada quando 'writeQuorum' réplicas
+     * confirmam; os uploads restantes continuam em segundo plano e, se falharem, a
+     * parte fica sub-replicada até a fila de replicação completá-la.
+     * 
+     * @param imageName nome da imagem
+     * @param numParts  número de partes
+     * @param partData  fornece os bytes da parte i (gerados sob demanda, para não
+     *                  manter todas as cópias em memória ao mesmo tempo)
+     * @return estado de replicação de cada parte, ou null se alguma parte não
+     *         atingiu o quórum de escrita
+     */
+    private List<PartReplication> placeParts(String imageName, int numParts, IntFunction<byte[]> partData)
+            throws InterruptedException {
+        List<PartReplication> parts = new ArrayList<>(numParts);
+
+        // Obter a lista de DataNodes disponíveis
+        List<String> dataNodeIds = new ArrayList<>(dataNodes.keySet());
+        if (dataNodeIds.isEmpty()) {
+            System.err.println("Nenhum DataNode disponível para armazenar a imagem.");
+            return null;
+        }
+
+        // Embaralha a lista de DataNodes para distribuir as partes de forma mais
+        // aleatória
+        Collections.shuffle(dataNodeIds);
+
+        // Se não houver DataNodes suficientes para atingir replicationFactor,
+        // armazenaremos em quantos for possível (ideal é ter replicationFactor ≤ número
+        // de DataNodes); a fila de replicação completa as réplicas quando houver nós
+        int replicasToCreate = Math.min(replicationFactor, dataNodeIds.size());
+        int quorum = Math.min(writeQuorum, replicasToCreate);
+        TraceContext trace = Tracer.current();
+
+        // Para cada parte da imagem
+        for (int i = 0; i < numParts; i++) {
+            byte[] data = partData.apply(i);
+            PartReplication part = new PartReplication(imageName, i, replicasToCreate);
+            unfinishedUploads.compute(imageName, (name, list) -> {
+                List<PartReplication> unfinished = list == null ? new ArrayList<>() : list;
+                unfinished.add(part);
+                return unfinished;
+            });
+
+            // Usamos o índice 'i' para espalhar as partes: (i + r) % dataNodeIds.size()
+            // escolhe DataNodes diferentes para cada réplica da parte
+            List<String> targets = new ArrayList<>(replicasToCreate);
+            for (int r = 0; r < replicasToCreate; r++) {
+                String dataNodeId = dataNodeIds.get((i + r) % dataNodeIds.size());
+                part.claim(dataNodeId);
+                targets.add(dataNodeId);
+            }
+            for (String dataNodeId : targets) {
+                uploadExecutor.execute(() -> {
+                    String stored = uploadWithRedirect(part, data, dataNodeId, dataNodeIds, trace);
+                    part.uploadFinished(stored, stored != null);
+                    if (part.inFlight() == 0) {
+                        unfinishedUploads.computeIfPresent(imageName, (name, list) -> {
+                            list.remove(part);
+                            return list.isEmpty() ? null : list;
+                        });
+                        if (underReplicated.get(part.key()) == part) {
+                            replicationQueue.offer(part);
+                        }
+                    }
+                });
+            }
+
+            if (!part.awaitQuorum(quorum)) {
+                // Não conseguimos o quórum de escrita para essa parte
+                System.err.println("Falha ao armazenar a parte " + i + " da imagem '" + imageName + "': "
+                        + part.replicas.size() + " de " + quorum + " réplicas confirmadas.");
+                writeQuorumFailures.increment();
+                // As réplicas já gravadas dessa tentativa não serão referenciadas; as que
+                // a versão anterior ainda usa são poupadas pelo PartReclaimer
+                parts.add(part);
+                for (PartReplication placed : parts) {
+                    placed.awaitUploads();
+                    for (String dataNodeId : placed.replicas) {
+                        reclaimer.tombstone(dataNodeId, imageName, placed.partNumber);
+                    }
+                }
+                return null;
+            }
+            parts.add(part);
+        }
+
+        return parts;
+    }
+
+    /**
+     * Envia uma réplica da parte, desviando para outro DataNode quando o escolhido
+     * está ocupado. Sem nós alternativos, espera o tempo sugerido pelo DataNode
+     * (com um pouco de jitter) e tenta de novo, até BUSY_MAX_RETRIES vezes.
+     *
+     * @return o DataNode que recebeu a réplica, ou null se o upload falhou
+     */
+    private String uploadWithRedirect(PartReplication part, byte[] data, String dataNodeId, List<String> candidates,
+            TraceContext trace) {
+        String target = dataNodeId;
+        int retries = 0;
+        while (true) {
+            try {
+                return uploadReplica(part.imageName, part.partNumber, data, target, trace) ? target : null;
+            } catch (DataNodeBusyException busy) {
+                dataNodeBusy.increment();
+                String alternative = part.claimAlternative(candidates);
+                if (alternative != null) {
+                    target = alternative;
+                    continue;
+                }
+                if (++retries > BUSY_MAX_RETRIES) {
+                    System.err.println("Falha ao armazenar a parte " + part.partNumber + " da imagem '"
+                            + part.imageName + "': DataNode " + target + " continua ocupado.");
+                    return null;
+                }
+                busyBackoffs.increment();
+                try {
+                    Thread.sleep(busy.retryAfterMillis
+                            + ThreadLocalRandom.current().nextLong(busy.retryAfterMillis / 2 + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+    }
+
+    private boolean uploadReplica(String imageName, int partNumber, byte[] data, String dataNodeId,
+            TraceContext trace) throws DataNodeBusyException {
+        DataNodeInterface dataNode = dataNodes.get(dataNodeId);
+        if (dataNode == null) {
+            System.err.println("DataNode " + dataNodeId
+                    + " não encontrado durante o upload. Notificando o MonitorService.");
+            notifyMonitorService(dataNodeId);
+            return false;
+        }
+
+        try (Span rpc = tracer.startClientSpan("DataNode.uploadPart", trace)) {
+            rpc.setAttribute("datanode.id", dataNodeId).setAttribute("part.number", partNumber);
+            try {
+                if (dataNode.uploadPart(imageName, partNumber, data, rpc.context())) {
+                    return true;
+                }
+                rpc.setError();
+                System.err.println("Falha ao armazenar a parte " + partNumber + " da imagem '" + imageName
+                        + "' no DataNode " + dataNodeId + ".");
+            } catch (DataNodeBusyException e) {
+                rpc.setAttribute("datanode.busy", true);
+                throw e;
+            } catch (RemoteException e) {
+                rpc.setError();
+                System.err.println("DataNode " + dataNodeId
+                        + " inacessível durante o upload. Notificando o MonitorService.");
+                notifyMonitorService(dataNodeId);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Registra o mapeamento das partes de uma imagem gravada e passa a acompanhar as
+     * partes que ainda não têm 'replicationFactor' réplicas.
+     */
+    private void commitParts(String imageName, List<PartReplication> parts) {
+        Map<Integer, List<String>> partsMap = new HashMap<>();
+        for (PartReplication part : parts) {
+            partsMap.put(part.partNumber, part.replicas);
+        }
+        imageParts.put(imageName, partsMap);
+        imageNames.add(imageName);
+        for (PartReplication part : parts) {
+            if (part.replicas.size() < replicationFactor) {
+                trackUnderReplicated(part);
+            }
+        }
+    }
+
+    /**
+     * Espera os uploads de gravações anteriores da imagem que ainda estão em
+     * andamento. Deve ser chamado com imageLock(imageName) seguro, antes de gravar
+     * ou remover a imagem.
+     */
+    private void awaitUnfinishedUploads(String imageName) throws InterruptedException {
+        List<PartReplication> unfinished = new ArrayList<>();
+        unfinishedUploads.computeIfPresent(imageName, (name, list) -> {
+            unfinished.addAll(list);
+            return list;
+        });
+        for (PartReplication part : unfinished) {
+            part.awaitUploads();
+        }
+    }
+
+    /** Indica se os metadados atuais apontam a réplica da parte no DataNode; usado pelo PartReclaimer. */
+    private boolean isReferenced(String dataNodeId, String imageName, int partNumber) {
+        Map<Integer, List<String>> parts = imageParts.get(imageName);
+        List<String> replicas = parts == null ? null : parts.get(partNumber);
+        return replicas != null && replicas.contains(dataNodeId);
+    }
+
+    private void trackUnderReplicated(PartReplication part) {
+        underReplicated.put(part.key(), part);
+        // Com uploads ainda em andamento, quem terminar por último enfileira a parte
+        if (part.inFlight() == 0) {
+            replicationQueue.offer(part);
+        }
+    }
+
+    private void startReplicationQueue() {
+        replicationThread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    PartReplication part = replicationQueue.poll(REPLICATION_RETRY_SECONDS, TimeUnit.SECONDS);
+                    if (part != null) {
+                        replicate(part);
                         continue;
                     }
-                    try {
-                        dataNode.deletePart(imageName, partNumber);
-                    } catch (RemoteException e) {
-                        System.err.println("DataNode " + dataNodeId
-                                + " inacessível durante a exclusão. Notificando o MonitorService.");
-                        notifyMonitorService(dataNodeId);
+                    // Fila vazia: tenta de novo as partes que continuam sub-replicadas
+                    // (por exemplo, à espera de novos DataNodes)
+                    if (!underReplicated.isEmpty()) {
+                        System.out.println(underReplicated.size() + " parte(s) com menos de " + replicationFactor
+                                + " réplicas.");
+                        for (PartReplication pending : underReplicated.values()) {
+                            if (pending.inFlight() == 0) {
+                                replicationQueue.offer(pending);
+                            }
+                        }
                     }
+                } catch (InterruptedException e) {
+                } catch (Exception e) {
+                    System.err.println("Erro na fila de replicação: " + e.getMessage());
                 }
             }
+        }, "replication-queue");
+        replicationThread.setDaemon(true);
+        replicationThread.start();
+    }
 
-            System.out.println("Imagem '" + imageName + "' deletada com sucesso.");
+    /**
+     * Encerra as threads de segundo plano do master (verificação dos DataNodes, fila
+     * de replicação, remoções, uploads pendentes, métricas e traces), para quando ele
+     * roda dentro de outro processo, como no LocalCluster. Não remove o objeto do RMI.
+     */
+    void shutdown() {
+        closed = true;
+        heartbeatThread.interrupt();
+        replicationThread.interrupt();
+        reclaimer.shutdown();
+        uploadExecutor.shutdownNow();
+        metrics.stopReporting();
+        tracer.shutdown();
+    }
+
+    private void replicate(PartReplication part) {
+        synchronized (imageLock(part.imageName)) {
+            if (underReplicated.get(part.key()) != part || part.inFlight() > 0) {
+                // Já resolvida, substituída por uma nova gravação, ou com uploads em andamento
+                return;
+            }
+            if (!isCurrentReplicaList(part.imageName, part.partNumber, part.replicas)) {
+                // Imagem removida ou regravada
+                underReplicated.remove(part.key(), part);
+                return;
+            }
+            if (part.replicas.isEmpty()) {
+                System.err.println("A parte " + part.partNumber + " da imagem " + part.imageName
+                        + " foi perdida: não há réplica de onde copiar.");
+                underReplicated.remove(part.key(), part);
+                return;
+            }
+        }
+        if (restoreReplicas(part.imageName, part.partNumber, part.replicas, null)) {
+            underReplicated.remove(part.key(), part);
+        }
+    }
+
+    @Override
+    public List<String> listUnderReplicatedParts(TraceContext trace) throws RemoteException {
+        try (Span span = tracer.startServerSpan("MasterServer.listUnderReplicatedParts", trace)) {
+            List<String> result = new ArrayList<>();
+            for (PartReplication part : underReplicated.values()) {
+                result.add(part.imageName + " parte " + part.partNumber + ": " + part.replicas.size() + "/"
+                        + replicationFactor + " réplicas" + (part.inFlight() > 0 ? " (uploads em andamento)" : ""));
+            }
+            Collections.sort(result);
+            span.setAttribute("parts", result.size());
+            return result;
+        }
+    }
+
+    @Override
+    public boolean deleteImage(String imageName, TraceContext trace) throws RemoteException {
+        long start = System.nanoTime();
+        inFlightRequests.incrementAndGet();
+        try (Span span = tracer.startServerSpan("MasterServer.deleteImage", trace)) {
+            span.setAttribute("image.name", imageName);
+            return doDeleteImage(imageName);
+        } finally {
+            inFlightRequests.decrementAndGet();
+            deleteImageLatency.record(System.nanoTime() - start);
+        }
+    }
 
+    private boolean doDeleteImage(String imageName) {
+        boolean deleted;
+        synchronized (imageLock(imageName)) {
+            try {
+                awaitUnfinishedUploads(imageName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            deleted = removeImage(imageName);
+        }
+        if (deleted) {
             // Notifica assinantes do evento IMAGE_DELETED
             notifySubscribers("IMAGE_DELETED", imageName);
+        }
+        return deleted;
+    }
+
+    private boolean removeImage(String imageName) {
+        Map<Integer, List<String>> parts = imageParts.remove(imageName);
+        imageNames.remove(imageName);
+        tilePyramids.remove(imageName);
+        spatialIndex.remove(imageName);
+        if (parts != null) {
+            // A remoção vale a partir daqui; os arquivos das partes são apagados em
+            // segundo plano, em lote por DataNode
+            for (Map.Entry<Integer, List<String>> entry : parts.entrySet()) {
+                for (String dataNodeId : entry.getValue()) {
+                    reclaimer.tombstone(dataNodeId, imageName, entry.getKey());
+                }
+            }
 
+            System.out.println("Imagem '" + imageName + "' deletada com sucesso.");
             return true;
         } else {
             System.out.println("Imagem '" + imageName + "' não encontrada.");
@@ -408,15 +1194,67 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
     }
 
     @Override
-    public void handleDataNodeFailure(String dataNodeId) throws RemoteException {
-        // Remover o DataNode do mapa (se ainda não foi removido)
-        dataNodes.remove(dataNodeId);
+    public void handleDataNodeFailure(String dataNodeId, TraceContext trace) throws RemoteException {
+        try (Span span = tracer.startServerSpan("MasterServer.handleDataNodeFailure", trace)) {
+            span.setAttribute("datanode.id", dataNodeId);
+
+            // Remover o DataNode do mapa (se ainda não foi removido)
+            dataNodes.remove(dataNodeId);
 
-        // Verificar se a imagem possuía partes unicamente nesse DataNode.
-        // Se houver replicação, tentar realocar dados.
-        redistributeDataFromFailedNode(dataNodeId);
-        // Caso não exista replicação, pode-se apenas marcar as imagens que dependiam
-        // desse nó como corrompidas.
+            // Verificar se a imagem possuía partes unicamente nesse DataNode.
+            // Se houver replicação, tentar realocar dados.
+            redistributeDataFromFailedNode(dataNodeId);
+            // Caso não exista replicação, pode-se apenas marcar as imagens que dependiam
+            // desse nó como corrompidas.
+        }
+    }
+
+    @Override
+    public void reportCorruptPart(String dataNodeId, String imageName, int partNumber, TraceContext trace)
+            throws RemoteException {
+        try (Span span = tracer.startServerSpan("MasterServer.reportCorruptPart", trace)) {
+            span.setAttribute("datanode.id", dataNodeId).setAttribute("image.name", imageName)
+                    .setAttribute("part.number", partNumber);
+            repairCorruptPart(dataNodeId, imageName, partNumber);
+        }
+    }
+
+    private void repairCorruptPart(String dataNodeId, String imageName, int partNumber) {
+        System.err.println("DataNode " + dataNodeId + " reportou a parte " + partNumber + " da imagem '"
+                + imageName + "' como corrompida.");
+        List<String> replicas;
+        synchronized (imageLock(imageName)) {
+            replicas = discardCorruptReplica(dataNodeId, imageName, partNumber);
+        }
+        if (replicas != null && !restoreReplicas(imageName, partNumber, replicas, dataNodeId)) {
+            trackUnderReplicated(new PartReplication(imageName, partNumber, replicas));
+        }
+    }
+
+    /**
+     * Remove a réplica corrompida da lista e a marca para remoção. Deve ser chamado
+     * com imageLock(imageName) seguro.
+     *
+     * @return a lista de réplicas restantes a restaurar, ou null se não há o que fazer
+     */
+    private List<String> discardCorruptReplica(String dataNodeId, String imageName, int partNumber) {
+        Map<Integer, List<String>> parts = imageParts.get(imageName);
+        if (parts == null) {
+            return null;
+        }
+        List<String> replicas = parts.get(partNumber);
+        if (replicas == null || !replicas.remove(dataNodeId)) {
+            return null;
+        }
+
+        // Descarta a réplica corrompida; ela é recriada a partir de uma réplica saudável
+        reclaimer.tombstone(dataNodeId, imageName, partNumber);
+        if (replicas.isEmpty()) {
+            System.err.println("A parte " + partNumber + " da imagem " + imageName
+                    + " foi perdida, pois não há outra réplica além da corrompida no DataNode " + dataNodeId);
+            return null;
+        }
+        return replicas;
     }
 
     // Métodos Pub/Sub implementados conforme a interface atualizada
@@ -427,12 +1265,8 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
             System.err.println("Tipo de evento inválido: " + eventType);
             return;
         }
-        List<SubscriberInterface> subs = subscribersByEventType.get(eventType);
-        synchronized (subs) {
-            if (!subs.contains(subscriber)) {
-                subs.add(subscriber);
-                System.out.println("Novo assinante adicionado para o evento: " + eventType);
-            }
+        if (subscribersByEventType.get(eventType).addIfAbsent(subscriber)) {
+            System.out.println("Novo assinante adicionado para o evento: " + eventType);
         }
     }
 
@@ -442,11 +1276,8 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
             System.err.println("Tipo de evento inválido: " + eventType);
             return;
         }
-        List<SubscriberInterface> subs = subscribersByEventType.get(eventType);
-        synchronized (subs) {
-            subs.remove(subscriber);
-            System.out.println("Assinante removido do evento: " + eventType);
-        }
+        subscribersByEventType.get(eventType).remove(subscriber);
+        System.out.println("Assinante removido do evento: " + eventType);
     }
 
     @Override
@@ -481,14 +1312,13 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
         List<SubscriberInterface> subs = subscribersByEventType.get(eventType);
         if (subs == null)
             return;
-        synchronized (subs) {
-            for (SubscriberInterface subscriber : subs) {
-                try {
-                    subscriber.notify(eventType, imageName);
-                } catch (RemoteException e) {
-                    System.err
-                            .println("Falha ao notificar um assinante do evento " + eventType + ": " + e.getMessage());
-                }
+        // Percorre uma cópia imutável da lista: as chamadas remotas não seguram lock
+        for (SubscriberInterface subscriber : subs) {
+            try {
+                subscriber.notify(eventType, imageName);
+            } catch (RemoteException e) {
+                System.err
+                        .println("Falha ao notificar um assinante do evento " + eventType + ": " + e.getMessage());
             }
         }
     }
@@ -501,9 +1331,11 @@ public class MasterServer extends UnicastRemoteObject implements MasterServerInt
             }
             MasterServer masterServer = new MasterServer(replicationFactor);
             Registry registry = LocateRegistry.getRegistry("localhost", 1098);
-            registry.rebind("MasterServer", masterServer);
+            String bindingName = PartitionedMaster.bindingName(PARTITION, PartitionedMaster.PARTITIONS);
+            registry.rebind(bindingName, masterServer);
 
-            System.out.println("MasterServer iniciado e registrado no RMI Registry.");
+            System.out.println(bindingName + " iniciado e registrado no RMI Registry (fator de replicação "
+                    + replicationFactor + ", quórum de escrita " + masterServer.writeQuorum + ").");
         } catch (Exception e) {
             System.err.println("Erro no MasterServer: " + e.getMessage());
             e.printStackTrace();
@@ -13,11 +13,32 @@ import java.util.Map;
 public interface MasterServerInterface extends Remote {
     void registerDataNode(String dataNodeId, DataNodeInterface dataNode) throws RemoteException;
     void unregisterDataNode(String dataNodeId) throws RemoteException;
-    List<String> listImages() throws RemoteException;
-    Map<Integer, DataNodeInterface> getImageParts(String imageName) throws RemoteException;
-    boolean storeImage(String imageName, byte[] imageData, int numParts) throws RemoteException;
-    boolean deleteImage(String imageName) throws RemoteException;
-    public void handleDataNodeFailure(String dataNodeId) throws RemoteException;
+
+    // -------------------------
+    // Operações rastreadas: o último parâmetro é o contexto de rastreamento do
+    // chamador (Tracer.current()), ou null para iniciar um novo trace no servidor
+    // -------------------------
+
+    // Listagem paginada em ordem de nome; startAfter é o token da página anterior (null na primeira)
+    ImagePage listImages(String prefix, String startAfter, int limit, TraceContext trace) throws RemoteException;
+    Map<Integer, DataNodeInterface> getImageParts(String imageName, TraceContext trace) throws RemoteException;
+    // Todas as réplicas registradas de cada parte (id do DataNode -> stub), para o cliente escolher
+    Map<Integer, Map<String, DataNodeInterface>> getImageReplicas(String imageName, TraceContext trace) throws RemoteException;
+    boolean storeImage(String imageName, byte[] imageData, int numParts, GeoMetadata metadata, TraceContext trace) throws RemoteException;
+    boolean deleteImage(String imageName, TraceContext trace) throws RemoteException;
+
+    // Armazenamento em pirâmide de tiles: cada tile é uma parte decodificável sozinha
+    boolean storeTiledImage(String imageName, byte[] imageData, int tileSize, GeoMetadata metadata, TraceContext trace) throws RemoteException;
+    TilePyramid getTilePyramid(String imageName, TraceContext trace) throws RemoteException;
+    TileLocation locateTile(String imageName, int z, int x, int y, TraceContext trace) throws RemoteException;
+
+    // Busca de cenas por área de interesse e intervalo de captura (metadados informados no armazenamento)
+    ImagePage queryImages(BoundingBox bbox, long fromMillis, long toMillis, int limit, TraceContext trace) throws RemoteException;
+    // Partes com menos réplicas que o fator de replicação (quórum de escrita, falhas, corrupção)
+    List<String> listUnderReplicatedParts(TraceContext trace) throws RemoteException;
+
+    public void handleDataNodeFailure(String dataNodeId, TraceContext trace) throws RemoteException;
+    void reportCorruptPart(String dataNodeId, String imageName, int partNumber, TraceContext trace) throws RemoteException;
     
 
     // -------------------------
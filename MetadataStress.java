@@ -0,0 +1,320 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Teste de estresse das operações de metadados do MasterServer, com o master e
+ * os DataNodes no próprio processo (LocalCluster).
+ *
+ * 1. Escalabilidade: vazão de storeImage/getImageReplicas/listImages com 1, 2, 4...
+ *    threads em imagens distintas.
+ * 2. Atualizações perdidas: cada thread grava um conjunto próprio de imagens; no
+ *    fim todas precisam aparecer na listagem paginada com todas as réplicas.
+ * 3. Intercalação: várias threads gravam e removem as mesmas poucas imagens. Cada
+ *    gravação marca todas as partes com o mesmo identificador; uma imagem que ficou
+ *    com partes de gravações diferentes, ou listada sem partes (e vice-versa),
+ *    indica operações intercaladas. A etapa roda de novo com quórum de escrita 1 e
+ *    alguns uploads lentos: storeImage retorna com uploads ainda em andamento, que
+ *    não podem alcançar a gravação ou remoção seguinte do mesmo nome.
+ *
+ * Uso:
+ *   java MetadataStress [--datanodes N] [--replication R] [--threads 1,2,4,8] [--duration S]
+ */
+public class MetadataStress {
+    private static final int PARTS = 4;
+    private static final int PART_SIZE = 64;
+    // Na etapa com quórum 1, um em cada SLOW_UPLOAD_ODDS uploads demora SLOW_UPLOAD_MS
+    private static final int SLOW_UPLOAD_MS = 200;
+    private static final int SLOW_UPLOAD_ODDS = 10;
+
+    private final LocalCluster cluster;
+    private final MasterServerInterface master;
+    private final int replicationFactor;
+    private int failures;
+
+    MetadataStress(int dataNodes, int replicationFactor) throws Exception {
+        this.cluster = new LocalCluster(dataNodes, replicationFactor);
+        this.master = cluster.master();
+        this.replicationFactor = replicationFactor;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int dataNodes = 4;
+        int replicationFactor = 2;
+        int[] threadCounts = { 1, 2, 4, 8 };
+        int durationSeconds = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--datanodes": dataNodes = Integer.parseInt(args[i + 1]); break;
+                case "--replication": replicationFactor = Integer.parseInt(args[i + 1]); break;
+                case "--threads":
+                    String[] values = args[i + 1].split(",");
+                    threadCounts = new int[values.length];
+                    for (int j = 0; j < values.length; j++) {
+                        threadCounts[j] = Integer.parseInt(values[j].trim());
+                    }
+                    break;
+                case "--duration": durationSeconds = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("Uso: java MetadataStress [--datanodes N] [--replication R] "
+                            + "[--threads 1,2,4,8] [--duration S]");
+                    System.exit(1);
+            }
+        }
+
+        int maxThreads = threadCounts[threadCounts.length - 1];
+        MetadataStress stress = new MetadataStress(dataNodes, replicationFactor);
+        try {
+            System.out.println("Processadores disponíveis: " + Runtime.getRuntime().availableProcessors());
+            stress.scaling(threadCounts, durationSeconds);
+            stress.lostUpdates(maxThreads, 200);
+            stress.interleaving(maxThreads, 8, durationSeconds);
+        } finally {
+            stress.cluster.close();
+        }
+        int failures = stress.failures;
+
+        if (replicationFactor > 1) {
+            // O quórum é lido na construção do MasterServer
+            System.setProperty("master.writeQuorum", "1");
+            MetadataStress quorumStress = new MetadataStress(dataNodes, replicationFactor);
+            try {
+                System.out.println("== Quórum de escrita 1 de " + replicationFactor + ", 1 em " + SLOW_UPLOAD_ODDS
+                        + " uploads com " + SLOW_UPLOAD_MS + " ms de atraso ==");
+                quorumStress.slowUploads(dataNodes);
+                quorumStress.interleaving(maxThreads, 2, durationSeconds);
+            } finally {
+                quorumStress.cluster.close();
+            }
+            failures += quorumStress.failures;
+        }
+
+        System.out.println(failures == 0 ? "OK: nenhuma inconsistência encontrada."
+                : "FALHA: " + failures + " inconsistência(s).");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private void scaling(int[] threadCounts, int durationSeconds) throws Exception {
+        System.out.println("== Escalabilidade (store + getImageReplicas + listImages em imagens distintas) ==");
+        System.out.printf("%8s %12s %10s%n", "threads", "ops/s", "aceleração");
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            LongAdder ops = new LongAdder();
+            runFor(threads, durationSeconds, (thread, deadline) -> {
+                int seq = 0;
+                while (System.nanoTime() < deadline) {
+                    String name = "scale-" + threads + "-" + thread + "-" + (seq++ % 500);
+                    master.storeImage(name, payload(thread, seq), PARTS, null, null);
+                    master.getImageReplicas(name, null);
+                    master.listImages("scale-" + threads + "-" + thread + "-", null, 20, null);
+                    ops.add(3);
+                }
+            });
+            double rate = ops.sum() / (double) durationSeconds;
+            if (baseline == 0) {
+                baseline = rate;
+            }
+            System.out.printf("%8d %12.1f %9.2fx%n", threads, rate, rate / baseline);
+        }
+    }
+
+    private void lostUpdates(int threads, int imagesPerThread) throws Exception {
+        System.out.println("== Atualizações perdidas: " + threads + " threads x " + imagesPerThread + " imagens ==");
+        runFor(threads, Integer.MAX_VALUE, (thread, deadline) -> {
+            for (int i = 0; i < imagesPerThread; i++) {
+                String name = "lost-" + thread + "-" + i;
+                if (!master.storeImage(name, payload(thread, i), PARTS, null, null)) {
+                    fail("storeImage de " + name + " retornou false");
+                }
+            }
+        });
+
+        Set<String> listed = new HashSet<>(listAll("lost-"));
+        int expected = threads * imagesPerThread;
+        if (listed.size() != expected) {
+            fail("listImages retornou " + listed.size() + " imagens, esperado " + expected);
+        }
+        for (int thread = 0; thread < threads; thread++) {
+            for (int i = 0; i < imagesPerThread; i++) {
+                String name = "lost-" + thread + "-" + i;
+                Map<Integer, Map<String, DataNodeInterface>> replicas = master.getImageReplicas(name, null);
+                if (!listed.contains(name) || replicas == null || replicas.size() != PARTS) {
+                    fail("imagem " + name + " perdida");
+                    continue;
+                }
+                for (Map<String, DataNodeInterface> partReplicas : replicas.values()) {
+                    if (partReplicas.size() != replicationFactor) {
+                        fail("imagem " + name + " com " + partReplicas.size() + " réplicas");
+                    }
+                }
+            }
+        }
+        System.out.println(expected + " imagens verificadas.");
+    }
+
+    private void interleaving(int threads, int names, int durationSeconds) throws Exception {
+        System.out.println("== Intercalação: " + threads + " threads gravando e removendo " + names + " imagens ==");
+        AtomicInteger stores = new AtomicInteger();
+        AtomicInteger deletes = new AtomicInteger();
+        AtomicInteger sequence = new AtomicInteger();
+        // Rodadas de um segundo, verificadas ao fim de cada uma: uma gravação estragada
+        // por um upload atrasado seria logo sobrescrita e não apareceria só no fim
+        for (int round = 0; round < durationSeconds; round++) {
+            runFor(threads, 1, (thread, deadline) -> {
+                while (System.nanoTime() < deadline) {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    String name = "shared-" + random.nextInt(names);
+                    if (random.nextInt(4) == 0) {
+                        master.deleteImage(name, null);
+                        deletes.incrementAndGet();
+                    } else {
+                        master.storeImage(name, payload(thread, sequence.incrementAndGet()), PARTS, null, null);
+                        stores.incrementAndGet();
+                    }
+                }
+            });
+            // Dá tempo aos uploads que passaram do quórum de chegarem aos DataNodes
+            Thread.sleep(2 * SLOW_UPLOAD_MS);
+            verifyShared(names);
+        }
+        System.out.println(stores.get() + " gravações e " + deletes.get() + " remoções concorrentes verificadas.");
+    }
+
+    private void verifyShared(int names) throws Exception {
+        Set<String> listed = new HashSet<>(listAll("shared-"));
+        for (int i = 0; i < names; i++) {
+            String name = "shared-" + i;
+            Map<Integer, Map<String, DataNodeInterface>> replicas = master.getImageReplicas(name, null);
+            if (listed.contains(name) != (replicas != null)) {
+                fail("imagem " + name + (replicas == null ? " listada sem partes" : " com partes e fora da listagem"));
+                continue;
+            }
+            if (replicas == null) {
+                continue;
+            }
+            // Todas as réplicas de todas as partes precisam ser da mesma gravação
+            Set<Long> tags = new HashSet<>();
+            for (Map.Entry<Integer, Map<String, DataNodeInterface>> part : replicas.entrySet()) {
+                for (Map.Entry<String, DataNodeInterface> replica : part.getValue().entrySet()) {
+                    byte[] data = replica.getValue().downloadPart(name, part.getKey(), null);
+                    if (data == null) {
+                        fail("parte " + part.getKey() + " de " + name + " ausente no DataNode " + replica.getKey());
+                        continue;
+                    }
+                    tags.add(ByteBuffer.wrap(data).getLong());
+                }
+            }
+            if (tags.size() > 1) {
+                fail("imagem " + name + " com partes de " + tags.size() + " gravações diferentes");
+            }
+        }
+    }
+
+    /**
+     * Registra de novo no master cada DataNode do cluster, por trás de um proxy
+     * exportado por RMI que atrasa alguns uploadPart; assim os uploads que passam
+     * do quórum terminam bem depois de storeImage retornar.
+     */
+    private void slowUploads(int dataNodes) throws Exception {
+        for (int i = 0; i < dataNodes; i++) {
+            DataNodeInterface slow = (DataNodeInterface) Proxy.newProxyInstance(
+                    DataNodeInterface.class.getClassLoader(), new Class<?>[] { DataNodeInterface.class },
+                    new SlowUploads(cluster.dataNode(i)));
+            master.registerDataNode(cluster.dataNodeId(i),
+                    (DataNodeInterface) UnicastRemoteObject.exportObject(slow, 0));
+        }
+    }
+
+    /** Repassa as chamadas ao stub do DataNode, atrasando alguns uploadPart. */
+    private static final class SlowUploads implements InvocationHandler {
+        private final DataNodeInterface target;
+
+        SlowUploads(DataNodeInterface target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("uploadPart") && ThreadLocalRandom.current().nextInt(SLOW_UPLOAD_ODDS) == 0) {
+                Thread.sleep(SLOW_UPLOAD_MS);
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private List<String> listAll(String prefix) throws Exception {
+        List<String> names = new ArrayList<>();
+        String startAfter = null;
+        do {
+            ImagePage page = master.listImages(prefix, startAfter, 100, null);
+            names.addAll(page.names);
+            startAfter = page.nextStartAfter;
+        } while (startAfter != null);
+        return names;
+    }
+
+    /**
+     * Conteúdo de uma gravação: cada parte começa com o mesmo identificador
+     * (thread, sequência), para detectar imagens com partes de gravações diferentes.
+     */
+    private static byte[] payload(int thread, int seq) {
+        ByteBuffer buffer = ByteBuffer.allocate(PARTS * PART_SIZE);
+        long tag = ((long) thread << 32) | (seq & 0xffffffffL);
+        for (int part = 0; part < PARTS; part++) {
+            buffer.putLong(part * PART_SIZE, tag);
+        }
+        return buffer.array();
+    }
+
+    private synchronized void fail(String message) {
+        failures++;
+        System.err.println("INCONSISTÊNCIA: " + message);
+    }
+
+    private interface Worker {
+        void run(int thread, long deadlineNanos) throws Exception;
+    }
+
+    private void runFor(int threads, int durationSeconds, Worker worker) throws Exception {
+        long deadline = durationSeconds == Integer.MAX_VALUE ? Long.MAX_VALUE
+                : System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CountDownLatch done = new CountDownLatch(threads);
+        Map<Integer, Exception> errors = new ConcurrentHashMap<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread runner = new Thread(() -> {
+                try {
+                    worker.run(thread, deadline);
+                } catch (Exception e) {
+                    errors.put(thread, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "stress-" + t);
+            runner.setDaemon(true);
+            runner.start();
+        }
+        done.await();
+        for (Exception e : errors.values()) {
+            fail("exceção em uma thread: " + e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro de métricas de baixo custo de um processo: contadores (LongAdder),
+ * gauges calculados na coleta e histogramas de latência sem locks.
+ * O registro no caminho crítico não aloca nem adquire locks; a conversão para o
+ * formato do Prometheus acontece apenas em snapshot().
+ */
+public class Metrics {
+    /** Limites (em segundos) dos buckets exportados para os histogramas de latência. */
+    private static final double[] LATENCY_BUCKETS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    private static final int REPORT_INTERVAL_SECONDS = Integer.getInteger("metrics.reportIntervalSeconds", 10);
+
+    private final String instance;
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private volatile Thread reporterThread; // null: sem envio ao MonitorService
+
+    private static class Counter {
+        final String help;
+        final LongAdder value = new LongAdder();
+
+        Counter(String help) {
+            this.help = help;
+        }
+    }
+
+    private static class Gauge {
+        final String help;
+        final LongSupplier supplier;
+
+        Gauge(String help, LongSupplier supplier) {
+            this.help = help;
+            this.supplier = supplier;
+        }
+    }
+
+    private static class Histogram {
+        final String help;
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Histogram(String help) {
+            this.help = help;
+        }
+    }
+
+    public Metrics(String instance) {
+        this.instance = instance;
+    }
+
+    /**
+     * Retorna o contador com o nome dado, criando-o na primeira chamada.
+     */
+    public LongAdder counter(String name, String help) {
+        return counters.computeIfAbsent(name, n -> new Counter(help)).value;
+    }
+
+    public void gauge(String name, String help, LongSupplier supplier) {
+        gauges.put(name, new Gauge(help, supplier));
+    }
+
+    /**
+     * Retorna o histograma de latência com o nome dado, criando-o na primeira chamada.
+     * Os valores são registrados em nanossegundos e exportados em segundos.
+     */
+    public LatencyHistogram histogram(String name, String help) {
+        return histograms.computeIfAbsent(name, n -> new Histogram(help)).latency;
+    }
+
+    /**
+     * Inicia a thread que envia periodicamente as métricas ao MonitorService.
+     */
+    public void startReporting(MonitorServiceInterface monitorService) {
+        Thread reporterThread = new Thread(() -> {
+            while (this.reporterThread == Thread.currentThread()) {
+                try {
+                    Thread.sleep(REPORT_INTERVAL_SECONDS * 1000L);
+                    monitorService.reportMetrics(snapshot());
+                } catch (InterruptedException e) {
+                } catch (RemoteException e) {
+                    System.err.println("Erro ao enviar métricas ao MonitorService: " + e.getMessage());
+                }
+            }
+        });
+        reporterThread.setDaemon(true);
+        this.reporterThread = reporterThread;
+        reporterThread.start();
+    }
+
+    /**
+     * Encerra a thread iniciada por {@link #startReporting}, se houver.
+     */
+    public void stopReporting() {
+        Thread reporterThread = this.reporterThread;
+        this.reporterThread = null;
+        if (reporterThread != null) {
+            reporterThread.interrupt();
+        }
+    }
+
+    public MetricsSnapshot snapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot(instance, System.currentTimeMillis());
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            MetricsSnapshot.Family family = new MetricsSnapshot.Family(entry.getKey(), "counter", entry.getValue().help);
+            family.samples.add(new MetricsSnapshot.Sample(entry.getKey(), "", entry.getValue().value.sum()));
+            snapshot.families.add(family);
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            MetricsSnapshot.Family family = new MetricsSnapshot.Family(entry.getKey(), "gauge", entry.getValue().help);
+            family.samples.add(new MetricsSnapshot.Sample(entry.getKey(), "", entry.getValue().supplier.getAsLong()));
+            snapshot.families.add(family);
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            String name = entry.getKey();
+            LatencyHistogram latency = entry.getValue().latency;
+            MetricsSnapshot.Family family = new MetricsSnapshot.Family(name, "histogram", entry.getValue().help);
+            for (double bound : LATENCY_BUCKETS_SECONDS) {
+                long count = latency.countAtOrBelow((long) (bound * 1_000_000_000L));
+                family.samples.add(new MetricsSnapshot.Sample(name + "_bucket", "le=\"" + bound + "\"", count));
+            }
+            long count = latency.count();
+            family.samples.add(new MetricsSnapshot.Sample(name + "_bucket", "le=\"+Inf\"", count));
+            family.samples.add(new MetricsSnapshot.Sample(name + "_sum", "", latency.sum() / 1e9));
+            family.samples.add(new MetricsSnapshot.Sample(name + "_count", "", count));
+            snapshot.families.add(family);
+        }
+        return snapshot;
+    }
+}
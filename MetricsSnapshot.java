@@ -0,0 +1,56 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fotografia das métricas de um processo (MasterServer ou DataNode), enviada ao
+ * MonitorService via RMI. Cada família corresponde a uma métrica do formato de
+ * exposição do Prometheus.
+ */
+public class MetricsSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Uma métrica (counter, gauge ou histogram) e suas amostras.
+     */
+    public static class Family implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+        final String type;
+        final String help;
+        final List<Sample> samples = new ArrayList<>();
+
+        Family(String name, String type, String help) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    /**
+     * Uma amostra: nome completo (ex.: x_bucket, x_sum), rótulos extras e valor.
+     */
+    public static class Sample implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+        final String labels;
+        final double value;
+
+        Sample(String name, String labels, double value) {
+            this.name = name;
+            this.labels = labels;
+            this.value = value;
+        }
+    }
+
+    final String instance;
+    final long timestampMillis;
+    final List<Family> families = new ArrayList<>();
+
+    MetricsSnapshot(String instance, long timestampMillis) {
+        this.instance = instance;
+        this.timestampMillis = timestampMillis;
+    }
+}
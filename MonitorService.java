@@ -1,28 +1,51 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpServer;
 
 /**
  * Classe que implementa o serviço de monitoramento (MonitorService).
- * Responsável por registrar o MasterServer e receber notificações de falhas em DataNodes.
+ * Responsável por registrar o MasterServer, receber notificações de falhas em DataNodes
+ * e coletar as métricas do MasterServer e dos DataNodes, exportando-as no formato
+ * de texto do Prometheus em http://localhost:&lt;porta&gt;/metrics.
+ * O endpoint só aceita conexões locais; -Dmonitor.metrics.host=0.0.0.0 (ou o
+ * endereço de uma interface) o expõe na rede.
  */
 public class MonitorService extends UnicastRemoteObject implements MonitorServiceInterface {
+    private static final int METRICS_PORT = Integer.getInteger("monitor.metrics.port", 9400);
+    private static final String METRICS_HOST = System.getProperty("monitor.metrics.host", "127.0.0.1");
+
+    // MasterServers registrados (um por partição do namespace)
+    private final List<MasterServerInterface> masterServers = new CopyOnWriteArrayList<>();
 
-    private MasterServerInterface masterServer;
+    // Última fotografia de métricas recebida de cada processo
+    private final Map<String, MetricsSnapshot> snapshots = new ConcurrentHashMap<>();
 
     protected MonitorService() throws RemoteException {
         super();
     }
 
     /**
-     * Registra o MasterServer para uso futuro (por exemplo, monitoramento mais elaborado).
+     * Registra um MasterServer para uso futuro (por exemplo, monitoramento mais elaborado).
      * @param master Referência remota para o MasterServer
      * @throws RemoteException Em caso de erro de comunicação RMI
      */
     @Override
     public void registerMasterServer(MasterServerInterface master) throws RemoteException {
-        this.masterServer = master;
+        masterServers.add(master);
         System.out.println("MasterServer registrado no MonitorService.");
     }
 
@@ -39,13 +62,74 @@ public class MonitorService extends UnicastRemoteObject implements MonitorServic
         // Lógica adicional de tratamento poderia ser inserida aqui.
     }
 
+    /**
+     * Recebe a fotografia de métricas de um MasterServer ou DataNode.
+     * @param snapshot Métricas atuais do processo
+     * @throws RemoteException Em caso de erro de comunicação RMI
+     */
+    @Override
+    public void reportMetrics(MetricsSnapshot snapshot) throws RemoteException {
+        snapshots.put(snapshot.instance, snapshot);
+    }
+
+    /**
+     * Gera o texto no formato de exposição do Prometheus com as métricas de todos os
+     * processos, agrupando cada métrica em uma única família com o rótulo "instance".
+     */
+    String renderPrometheus() {
+        Map<String, List<MetricsSnapshot.Family>> familiesByName = new TreeMap<>();
+        Map<MetricsSnapshot.Family, String> instanceOf = new IdentityHashMap<>();
+        for (MetricsSnapshot snapshot : snapshots.values()) {
+            for (MetricsSnapshot.Family family : snapshot.families) {
+                familiesByName.computeIfAbsent(family.name, n -> new ArrayList<>()).add(family);
+                instanceOf.put(family, snapshot.instance);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<MetricsSnapshot.Family>> entry : familiesByName.entrySet()) {
+            MetricsSnapshot.Family first = entry.getValue().get(0);
+            sb.append("# HELP ").append(first.name).append(' ').append(first.help).append('\n');
+            sb.append("# TYPE ").append(first.name).append(' ').append(first.type).append('\n');
+            for (MetricsSnapshot.Family family : entry.getValue()) {
+                String instanceLabel = "instance=\"" + instanceOf.get(family) + "\"";
+                for (MetricsSnapshot.Sample sample : family.samples) {
+                    sb.append(sample.name).append('{').append(instanceLabel);
+                    if (!sample.labels.isEmpty()) {
+                        sb.append(',').append(sample.labels);
+                    }
+                    sb.append("} ").append(sample.value).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Inicia o servidor HTTP que expõe as métricas em /metrics, em METRICS_HOST.
+     */
+    private void startMetricsEndpoint() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(METRICS_HOST, METRICS_PORT), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = renderPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        System.out.println("Métricas disponíveis em http://" + METRICS_HOST + ":" + METRICS_PORT + "/metrics");
+    }
+
     public static void main(String[] args) {
         try {
             MonitorService monitor = new MonitorService();
             Registry registry = LocateRegistry.createRegistry(2000);
             registry.rebind("MonitorService", monitor);
             System.out.println("MonitorService iniciado e registrado no RMI Registry na porta 2000.");
-        } catch (RemoteException e) {
+            monitor.startMetricsEndpoint();
+        } catch (IOException e) {
             System.err.println("Erro ao iniciar o MonitorService: " + e.getMessage());
             e.printStackTrace();
         }
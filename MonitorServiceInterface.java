@@ -4,4 +4,5 @@ import java.rmi.RemoteException;
 public interface MonitorServiceInterface extends Remote {
     void registerMasterServer(MasterServerInterface master) throws RemoteException;
     void notifyFailure(String dataNodeId) throws RemoteException;
+    void reportMetrics(MetricsSnapshot snapshot) throws RemoteException;
 }
@@ -0,0 +1,20 @@
+import java.io.Serializable;
+
+/**
+ * Remoção de uma parte enviada em lote a um DataNode. O arquivo só é apagado se
+ * tiver sido gravado há pelo menos minAgeMillis (pelo relógio do DataNode), o que
+ * protege uma parte regravada depois que a remoção foi decidida.
+ */
+public class PartDeletion implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String imageName;
+    final int partNumber;
+    final long minAgeMillis;
+
+    PartDeletion(String imageName, int partNumber, long minAgeMillis) {
+        this.imageName = imageName;
+        this.partNumber = partNumber;
+        this.minAgeMillis = minAgeMillis;
+    }
+}
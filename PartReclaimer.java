@@ -0,0 +1,363 @@
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Remoção assíncrona das partes de imagens apagadas, no MasterServer.
+ *
+ * deleteImage apenas remove os metadados e deixa aqui uma marca (tombstone) para
+ * cada réplica. Uma thread em segundo plano envia as remoções em lote, uma chamada
+ * deleteParts por DataNode; um nó inacessível mantém as suas pendentes e é tentado
+ * de novo a cada master.reclaim.retrySeconds ou quando volta a se registrar.
+ *
+ * Periodicamente (master.gc.intervalSeconds) o inventário de cada DataNode é
+ * comparado com os metadados, e as partes que nenhuma imagem referencia (gravações
+ * que falharam, réplicas que sobraram de uma regravação, remoções perdidas) são
+ * apagadas. Só entram partes gravadas há mais de master.gc.graceSeconds, para não
+ * atingir gravações em andamento.
+ */
+public class PartReclaimer {
+    private static final int BATCH_SIZE = Integer.getInteger("master.reclaim.batchSize", 1000);
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("master.reclaim.retrySeconds", 30));
+    private static final long GC_INTERVAL_MILLIS = TimeUnit.SECONDS
+            .toMillis(Long.getLong("master.gc.intervalSeconds", 3600));
+    private static final long GC_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("master.gc.graceSeconds", 600));
+    // Acima dessa fração de partes sem referência o nó não é limpo: os metadados provavelmente
+    // se perderam (por exemplo, o master foi reiniciado) e apagar destruiria dados
+    private static final double GC_MAX_ORPHAN_FRACTION = Double
+            .parseDouble(System.getProperty("master.gc.maxOrphanFraction", "0.5"));
+
+    /** Indica se os metadados atuais referenciam a réplica de uma parte em um DataNode. */
+    interface ReferenceCheck {
+        boolean isReferenced(String dataNodeId, String imageName, int partNumber);
+    }
+
+    private final Map<String, DataNodeInterface> dataNodes;
+    private final ReferenceCheck references;
+    private final Predicate<String> ownsImage;
+    private final Tracer tracer;
+
+    // Remoções pendentes: DataNode -> imagem -> partes. Protegido por 'this'
+    private final Map<String, Map<String, Set<Integer>>> pending = new HashMap<>();
+    // Imagem -> DataNodes com remoções pendentes dela, para forget() não varrer tudo
+    private final Map<String, Set<String>> nodesByImage = new HashMap<>();
+    // Imagem -> lotes em envio que a contêm
+    private final Map<String, Integer> inFlightImages = new HashMap<>();
+    private int pendingCount;
+    private boolean signalled;
+    private Thread reclaimerThread;
+    private volatile boolean closed;
+
+    // DataNode -> instante (ms) a partir do qual uma nova tentativa é permitida
+    private final Map<String, Long> retryAt = new ConcurrentHashMap<>();
+
+    private final LongAdder reclaimedParts;
+    private final LongAdder orphanParts;
+    private final LatencyHistogram batchLatency;
+
+    /**
+     * @param dataNodes  DataNodes registrados (compartilhado com o MasterServer)
+     * @param references consulta aos metadados do MasterServer
+     * @param ownsImage  imagens cujos metadados estão neste master; com o namespace
+     *                   particionado, as demais nunca são tratadas como órfãs
+     */
+    PartReclaimer(Map<String, DataNodeInterface> dataNodes, ReferenceCheck references, Predicate<String> ownsImage,
+            Metrics metrics, Tracer tracer) {
+        this.dataNodes = dataNodes;
+        this.references = references;
+        this.ownsImage = ownsImage;
+        this.tracer = tracer;
+        this.reclaimedParts = metrics.counter("master_reclaimed_parts_total", "Partes removidas em segundo plano");
+        this.orphanParts = metrics.counter("master_orphan_parts_total",
+                "Partes sem referência encontradas e removidas pela coleta de órfãs");
+        this.batchLatency = metrics.histogram("master_reclaim_batch_seconds", "Duração de um lote de deleteParts");
+        metrics.gauge("master_pending_part_deletions", "Réplicas de partes aguardando remoção", this::pendingCount);
+    }
+
+    void start() {
+        reclaimerThread = new Thread(this::reclaimLoop, "part-reclaimer");
+        reclaimerThread.setDaemon(true);
+        reclaimerThread.start();
+    }
+
+    /** Encerra a thread de remoção; as remoções pendentes são descartadas. */
+    void shutdown() {
+        closed = true;
+        if (reclaimerThread != null) {
+            reclaimerThread.interrupt();
+        }
+    }
+
+    /** Marca a réplica de uma parte no DataNode para remoção. */
+    synchronized void tombstone(String dataNodeId, String imageName, int partNumber) {
+        if (pending.computeIfAbsent(dataNodeId, id -> new HashMap<>())
+                .computeIfAbsent(imageName, name -> new HashSet<>()).add(partNumber)) {
+            pendingCount++;
+        }
+        nodesByImage.computeIfAbsent(imageName, name -> new HashSet<>()).add(dataNodeId);
+        signalled = true;
+        notifyAll();
+    }
+
+    /**
+     * Descarta as remoções pendentes de uma imagem que vai ser regravada, depois de
+     * esperar os lotes em envio que a contêm. Deve ser chamado com o lock da imagem,
+     * antes dos uploads: assim nenhuma remoção antiga alcança as partes novas. As
+     * réplicas antigas que a nova gravação não sobrescrever ficam para a coleta de
+     * órfãs.
+     */
+    synchronized void forget(String imageName) throws InterruptedException {
+        while (inFlightImages.containsKey(imageName)) {
+            wait();
+        }
+        Set<String> nodes = nodesByImage.remove(imageName);
+        if (nodes == null) {
+            return;
+        }
+        for (String dataNodeId : nodes) {
+            Map<String, Set<Integer>> images = pending.get(dataNodeId);
+            Set<Integer> parts = images == null ? null : images.remove(imageName);
+            if (parts != null) {
+                pendingCount -= parts.size();
+            }
+            if (images != null && images.isEmpty()) {
+                pending.remove(dataNodeId);
+            }
+        }
+    }
+
+    /**
+     * Como forget, mas só para a réplica de uma parte em um DataNode: usado antes de
+     * recriar uma réplica nesse nó, com o lock da imagem seguro.
+     */
+    synchronized void forget(String dataNodeId, String imageName, int partNumber) throws InterruptedException {
+        while (inFlightImages.containsKey(imageName)) {
+            wait();
+        }
+        Map<String, Set<Integer>> images = pending.get(dataNodeId);
+        Set<Integer> parts = images == null ? null : images.get(imageName);
+        if (parts == null || !parts.remove(partNumber)) {
+            return;
+        }
+        pendingCount--;
+        if (parts.isEmpty()) {
+            images.remove(imageName);
+            Set<String> nodes = nodesByImage.get(imageName);
+            if (nodes != null && nodes.remove(dataNodeId) && nodes.isEmpty()) {
+                nodesByImage.remove(imageName);
+            }
+            if (images.isEmpty()) {
+                pending.remove(dataNodeId);
+            }
+        }
+    }
+
+    /** Um DataNode voltou a se registrar: as remoções pendentes dele são tentadas já. */
+    synchronized void nodeAvailable(String dataNodeId) {
+        retryAt.remove(dataNodeId);
+        if (pending.containsKey(dataNodeId)) {
+            signalled = true;
+            notifyAll();
+        }
+    }
+
+    synchronized int pendingCount() {
+        return pendingCount;
+    }
+
+    private void reclaimLoop() {
+        long nextGc = System.currentTimeMillis() + GC_INTERVAL_MILLIS;
+        while (!closed) {
+            try {
+                List<String> nodes;
+                synchronized (this) {
+                    if (!signalled) {
+                        wait(Math.max(1, Math.min(RETRY_MILLIS, nextGc - System.currentTimeMillis())));
+                    }
+                    signalled = false;
+                    nodes = new ArrayList<>(pending.keySet());
+                }
+                for (String dataNodeId : nodes) {
+                    reclaim(dataNodeId);
+                }
+                if (System.currentTimeMillis() >= nextGc) {
+                    collectOrphans();
+                    nextGc = System.currentTimeMillis() + GC_INTERVAL_MILLIS;
+                }
+            } catch (InterruptedException e) {
+            } catch (Exception e) {
+                System.err.println("Erro na remoção de partes em segundo plano: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Envia as remoções pendentes de um DataNode, em lotes de até BATCH_SIZE partes.
+     * Se o nó não responder, as partes voltam para a fila e o nó só é tentado de novo
+     * depois de RETRY_MILLIS.
+     */
+    private void reclaim(String dataNodeId) {
+        Long notBefore = retryAt.get(dataNodeId);
+        if (notBefore != null && System.currentTimeMillis() < notBefore) {
+            return;
+        }
+        DataNodeInterface dataNode = dataNodes.get(dataNodeId);
+        if (dataNode == null) {
+            // Fora do cluster por enquanto; as remoções esperam o nó voltar
+            retryAt.put(dataNodeId, System.currentTimeMillis() + RETRY_MILLIS);
+            return;
+        }
+        while (true) {
+            Map<String, Set<Integer>> batch = takeBatch(dataNodeId);
+            if (batch.isEmpty()) {
+                retryAt.remove(dataNodeId);
+                return;
+            }
+            boolean sent = false;
+            long start = System.nanoTime();
+            try {
+                List<PartDeletion> deletions = new ArrayList<>();
+                for (Map.Entry<String, Set<Integer>> image : batch.entrySet()) {
+                    for (int partNumber : image.getValue()) {
+                        // Uma falha de gravação pode ter marcado uma réplica que a versão anterior ainda usa
+                        if (!references.isReferenced(dataNodeId, image.getKey(), partNumber)) {
+                            deletions.add(new PartDeletion(image.getKey(), partNumber, 0));
+                        }
+                    }
+                }
+                if (!deletions.isEmpty()) {
+                    try (Span rpc = tracer.startClientSpan("DataNode.deleteParts")) {
+                        rpc.setAttribute("datanode.id", dataNodeId).setAttribute("parts", deletions.size());
+                        dataNode.deleteParts(deletions, rpc.context());
+                    }
+                    reclaimedParts.add(deletions.size());
+                }
+                sent = true;
+            } catch (RemoteException e) {
+                System.err.println("DataNode " + dataNodeId + " inacessível ao remover partes; nova tentativa em "
+                        + TimeUnit.MILLISECONDS.toSeconds(RETRY_MILLIS) + " s.");
+            } finally {
+                finishBatch(dataNodeId, batch, sent);
+                batchLatency.record(System.nanoTime() - start);
+            }
+            if (!sent) {
+                retryAt.put(dataNodeId, System.currentTimeMillis() + RETRY_MILLIS);
+                return;
+            }
+        }
+    }
+
+    /** Retira até BATCH_SIZE partes pendentes do DataNode e marca as imagens delas como em envio. */
+    private synchronized Map<String, Set<Integer>> takeBatch(String dataNodeId) {
+        Map<String, Set<Integer>> batch = new HashMap<>();
+        Map<String, Set<Integer>> images = pending.get(dataNodeId);
+        if (images == null) {
+            return batch;
+        }
+        int size = 0;
+        Iterator<Map.Entry<String, Set<Integer>>> it = images.entrySet().iterator();
+        while (it.hasNext() && size < BATCH_SIZE) {
+            Map.Entry<String, Set<Integer>> image = it.next();
+            Set<Integer> taken = new HashSet<>();
+            Iterator<Integer> parts = image.getValue().iterator();
+            while (parts.hasNext() && size < BATCH_SIZE) {
+                taken.add(parts.next());
+                parts.remove();
+                size++;
+            }
+            if (image.getValue().isEmpty()) {
+                it.remove();
+                Set<String> nodes = nodesByImage.get(image.getKey());
+                if (nodes != null && nodes.remove(dataNodeId) && nodes.isEmpty()) {
+                    nodesByImage.remove(image.getKey());
+                }
+            }
+            batch.put(image.getKey(), taken);
+            inFlightImages.merge(image.getKey(), 1, Integer::sum);
+        }
+        if (images.isEmpty()) {
+            pending.remove(dataNodeId);
+        }
+        pendingCount -= size;
+        return batch;
+    }
+
+    /** Libera as imagens do lote; se o envio falhou, devolve as partes à fila. */
+    private synchronized void finishBatch(String dataNodeId, Map<String, Set<Integer>> batch, boolean sent) {
+        for (Map.Entry<String, Set<Integer>> image : batch.entrySet()) {
+            inFlightImages.computeIfPresent(image.getKey(), (name, count) -> count == 1 ? null : count - 1);
+            if (!sent) {
+                for (int partNumber : image.getValue()) {
+                    if (pending.computeIfAbsent(dataNodeId, id -> new HashMap<>())
+                            .computeIfAbsent(image.getKey(), name -> new HashSet<>()).add(partNumber)) {
+                        pendingCount++;
+                    }
+                }
+                nodesByImage.computeIfAbsent(image.getKey(), name -> new HashSet<>()).add(dataNodeId);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Compara o inventário de cada DataNode com os metadados e apaga as partes que
+     * nenhuma imagem deste master referencia. O próprio DataNode reconfere a idade de
+     * cada arquivo antes de apagá-lo, então uma parte regravada nesse meio tempo fica.
+     */
+    void collectOrphans() {
+        for (Map.Entry<String, DataNodeInterface> entry : dataNodes.entrySet()) {
+            String dataNodeId = entry.getKey();
+            try (Span span = tracer.startSpan("PartReclaimer.collectOrphans")) {
+                span.setAttribute("datanode.id", dataNodeId);
+                Map<String, Set<Integer>> inventory;
+                try (Span rpc = tracer.startClientSpan("DataNode.listParts")) {
+                    inventory = entry.getValue().listParts(GC_GRACE_MILLIS, rpc.context());
+                }
+
+                int owned = 0;
+                List<PartDeletion> orphans = new ArrayList<>();
+                for (Map.Entry<String, Set<Integer>> image : inventory.entrySet()) {
+                    if (!ownsImage.test(image.getKey())) {
+                        continue;
+                    }
+                    for (int partNumber : image.getValue()) {
+                        owned++;
+                        if (!references.isReferenced(dataNodeId, image.getKey(), partNumber)) {
+                            orphans.add(new PartDeletion(image.getKey(), partNumber, GC_GRACE_MILLIS));
+                        }
+                    }
+                }
+                if (orphans.isEmpty()) {
+                    continue;
+                }
+                if (orphans.size() > owned * GC_MAX_ORPHAN_FRACTION) {
+                    System.err.println("DataNode " + dataNodeId + ": " + orphans.size() + " de " + owned
+                            + " partes sem referência; coleta de órfãs suspensa para este nó.");
+                    continue;
+                }
+
+                int deleted = 0;
+                for (int from = 0; from < orphans.size(); from += BATCH_SIZE) {
+                    List<PartDeletion> batch = orphans.subList(from, Math.min(orphans.size(), from + BATCH_SIZE));
+                    try (Span rpc = tracer.startClientSpan("DataNode.deleteParts")) {
+                        rpc.setAttribute("datanode.id", dataNodeId).setAttribute("parts", batch.size());
+                        deleted += entry.getValue().deleteParts(new ArrayList<>(batch), rpc.context());
+                    }
+                }
+                orphanParts.add(deleted);
+                System.out.println("DataNode " + dataNodeId + ": " + deleted + " partes órfãs removidas.");
+            } catch (RemoteException e) {
+                System.err.println("Coleta de órfãs: DataNode " + dataNodeId + " inacessível - " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.File;
+import java.io.IOException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inicia um cluster com o namespace particionado, cada processo em sua própria JVM:
+ * o RMI Registry (neste processo), N MasterServers (um por partição) e M DataNodes
+ * compartilhados por todas as partições. A saída de cada processo vai para
+ * partitioned-cluster/&lt;processo&gt;.log. ENTER encerra todos os processos.
+ *
+ * Uso:
+ *   java PartitionedCluster [--masters N] [--datanodes M] [--replication R]
+ *
+ * Em seguida, por exemplo:
+ *   java -cp target/classes LoadGenerator --host localhost --port 1098 --partitions N
+ */
+public class PartitionedCluster {
+    private static final int REGISTRY_PORT = 1098;
+    private static final File LOG_DIR = new File("partitioned-cluster");
+
+    private final List<Process> processes = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        int masters = 2;
+        int dataNodes = 3;
+        int replicationFactor = 2;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--masters": masters = Integer.parseInt(args[i + 1]); break;
+                case "--datanodes": dataNodes = Integer.parseInt(args[i + 1]); break;
+                case "--replication": replicationFactor = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("Uso: java PartitionedCluster [--masters N] [--datanodes M] [--replication R]");
+                    System.exit(1);
+            }
+        }
+
+        PartitionedCluster cluster = new PartitionedCluster();
+        Runtime.getRuntime().addShutdownHook(new Thread(cluster::stop));
+        cluster.start(masters, dataNodes, replicationFactor);
+
+        System.out.println("Cluster pronto: " + masters + " master(s), " + dataNodes + " DataNode(s). Logs em "
+                + LOG_DIR + "/. Pressione ENTER para encerrar.");
+        System.in.read();
+        System.exit(0);
+    }
+
+    private void start(int masters, int dataNodes, int replicationFactor) throws Exception {
+        LOG_DIR.mkdirs();
+        Registry registry = LocateRegistry.createRegistry(REGISTRY_PORT);
+
+        for (int k = 0; k < masters; k++) {
+            launch("master-" + k, "MasterServer", Arrays.asList("-Dmaster.partitions=" + masters,
+                    "-Dmaster.partition=" + k), String.valueOf(replicationFactor));
+        }
+        // Os DataNodes se registram em todas as partições, então precisam que todos os masters estejam no ar
+        for (int k = 0; k < masters; k++) {
+            awaitBinding(registry, PartitionedMaster.bindingName(k, masters));
+        }
+
+        for (int i = 0; i < dataNodes; i++) {
+            String id = "dn" + i;
+            launch("datanode-" + id, "DataNode", Arrays.asList("-Dmaster.partitions=" + masters,
+                    "-Dmaster.host=localhost"), id, new File(LOG_DIR, "storage-" + id).getPath());
+        }
+    }
+
+    private void launch(String name, String mainClass, List<String> jvmArgs, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(jvmArgs);
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+
+        File log = new File(LOG_DIR, name + ".log");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(log)).start();
+        processes.add(process);
+        System.out.println("Iniciado " + name + " (pid " + process.pid() + ")");
+    }
+
+    private static void awaitBinding(Registry registry, String bindingName) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!Arrays.asList(registry.list()).contains(bindingName)) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(bindingName + " não se registrou em 30 segundos");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private void stop() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tabela de roteamento do namespace particionado entre vários MasterServers.
+ *
+ * Cada imagem pertence à partição hash(nome) mod N; as operações sobre uma imagem
+ * vão direto ao master dono dela, sem intermediário. Listagens e buscas consultam
+ * todas as partições e combinam os resultados; o registro de DataNodes, falhas e
+ * inscrições em eventos são repassados a todas, pois os DataNodes são
+ * compartilhados entre as partições.
+ *
+ * Os masters de um cluster particionado são iniciados com -Dmaster.partitions=N e
+ * -Dmaster.partition=k e registrados como "MasterServer-k"; com uma única partição
+ * o nome continua "MasterServer".
+ *
+ * Uma partição fora do ar afeta só as imagens dela: as operações repassadas a todas
+ * continuam nas demais, e listagens e buscas retornam os resultados parciais
+ * marcados com as partições que faltaram. A chamada só falha se nenhuma partição
+ * responder. Um master reiniciado volta a ser usado sem reiniciar o chamador: a
+ * partição é procurada de novo no registry quando está ausente ou quando o stub
+ * antigo deixa de responder.
+ */
+public class PartitionedMaster implements MasterServerInterface {
+    static final int PARTITIONS = Integer.getInteger("master.partitions", 1);
+
+    private final Registry registry;
+    private final AtomicReferenceArray<MasterServerInterface> masters; // null: partição não encontrada no registry
+
+    /** Chamada a um master, repassada por {@link #call} e {@link #gather}. */
+    private interface PartitionCall<T> {
+        T call(MasterServerInterface master) throws RemoteException;
+    }
+
+    PartitionedMaster(Registry registry, MasterServerInterface[] masters) {
+        this.registry = registry;
+        this.masters = new AtomicReferenceArray<>(masters);
+    }
+
+    static String bindingName(int partition, int partitions) {
+        return partitions == 1 ? "MasterServer" : "MasterServer-" + partition;
+    }
+
+    /**
+     * Partição dona da imagem. String.hashCode é definido pela especificação da
+     * linguagem, então todos os processos calculam a mesma partição.
+     */
+    static int partitionOf(String imageName, int partitions) {
+        return Math.floorMod(imageName.hashCode(), partitions);
+    }
+
+    /**
+     * Procura os masters no registry. Com uma partição retorna o próprio stub do
+     * MasterServer; com mais, a tabela de roteamento sobre os stubs de todos. Uma
+     * partição ausente do registry fica indisponível até aparecer, e as outras
+     * continuam atendendo; só falha se nenhuma for encontrada.
+     */
+    static MasterServerInterface lookup(Registry registry, int partitions) throws RemoteException, NotBoundException {
+        if (partitions == 1) {
+            return (MasterServerInterface) registry.lookup(bindingName(0, 1));
+        }
+        MasterServerInterface[] masters = new MasterServerInterface[partitions];
+        NotBoundException missing = null;
+        for (int i = 0; i < partitions; i++) {
+            try {
+                masters[i] = (MasterServerInterface) registry.lookup(bindingName(i, partitions));
+            } catch (NotBoundException e) {
+                System.err.println("Aviso: " + bindingName(i, partitions) + " não está no registry; partição "
+                        + i + " indisponível.");
+                missing = e;
+            }
+        }
+        if (missing != null && Arrays.stream(masters).allMatch(master -> master == null)) {
+            throw missing;
+        }
+        return new PartitionedMaster(registry, masters);
+    }
+
+    /**
+     * Procura a partição de novo no registry, substituindo o stub 'stale'.
+     *
+     * @return o stub registrado, ou null se a partição continua fora do registry
+     */
+    private MasterServerInterface relookup(int partition, MasterServerInterface stale) {
+        try {
+            MasterServerInterface fresh = (MasterServerInterface) registry.lookup(
+                    bindingName(partition, masters.length()));
+            masters.compareAndSet(partition, stale, fresh);
+            return fresh;
+        } catch (NotBoundException | RemoteException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Executa a chamada no master da partição. Se o stub não alcança mais o master
+     * (ConnectException ou NoSuchObjectException, isto é, a chamada não chegou a ser
+     * executada), procura a partição de novo e, se houver outro stub, repete uma vez.
+     */
+    private <T> T call(int partition, PartitionCall<T> call) throws RemoteException {
+        MasterServerInterface master = masters.get(partition);
+        if (master == null && (master = relookup(partition, null)) == null) {
+            throw new RemoteException("Partição " + partition + " do namespace indisponível");
+        }
+        try {
+            return call.call(master);
+        } catch (ConnectException | NoSuchObjectException e) {
+            MasterServerInterface fresh = relookup(partition, master);
+            if (fresh == null || fresh.equals(master)) {
+                throw e;
+            }
+            return call.call(fresh);
+        }
+    }
+
+    private <T> T owner(String imageName, PartitionCall<T> call) throws RemoteException {
+        return call(partitionOf(imageName, masters.length()), call);
+    }
+
+    /**
+     * Repassa a chamada a todas as partições. As que falharem são ignoradas com um
+     * aviso e, se 'unavailable' não for null, acrescentadas a ele; se nenhuma
+     * responder, relança o último erro.
+     *
+     * @return os resultados das partições que responderam
+     */
+    private <T> List<T> gather(String operation, List<Integer> unavailable, PartitionCall<T> call)
+            throws RemoteException {
+        List<T> results = new ArrayList<>(masters.length());
+        RemoteException failure = null;
+        for (int i = 0; i < masters.length(); i++) {
+            try {
+                results.add(call(i, call));
+            } catch (RemoteException e) {
+                System.err.println("Aviso: partição " + i + " não respondeu a " + operation + ": " + e.getMessage());
+                failure = e;
+                if (unavailable != null) {
+                    unavailable.add(i);
+                }
+            }
+        }
+        if (results.isEmpty()) {
+            throw failure;
+        }
+        return results;
+    }
+
+    @Override
+    public void registerDataNode(String dataNodeId, DataNodeInterface dataNode) throws RemoteException {
+        gather("registerDataNode", null, master -> {
+            master.registerDataNode(dataNodeId, dataNode);
+            return null;
+        });
+    }
+
+    @Override
+    public void unregisterDataNode(String dataNodeId) throws RemoteException {
+        gather("unregisterDataNode", null, master -> {
+            master.unregisterDataNode(dataNodeId);
+            return null;
+        });
+    }
+
+    /**
+     * Combina as páginas de todas as partições. Cada partição devolve seus nomes
+     * seguintes a startAfter em ordem, então os 'limit' menores da união formam a
+     * página global; o último deles é o token da próxima página.
+     */
+    @Override
+    public ImagePage listImages(String prefix, String startAfter, int limit, TraceContext trace) throws RemoteException {
+        TreeSet<String> merged = new TreeSet<>();
+        List<Integer> unavailable = new ArrayList<>();
+        boolean more = false;
+        for (ImagePage page : gather("listImages", unavailable,
+                master -> master.listImages(prefix, startAfter, limit, trace))) {
+            merged.addAll(page.names);
+            more |= page.nextStartAfter != null;
+        }
+        List<String> names = new ArrayList<>(Math.min(limit, merged.size()));
+        for (String name : merged) {
+            if (names.size() == limit) {
+                more = true;
+                break;
+            }
+            names.add(name);
+        }
+        String next = more && !names.isEmpty() ? names.get(names.size() - 1) : null;
+        return new ImagePage(names, next, unavailable);
+    }
+
+    @Override
+    public Map<Integer, DataNodeInterface> getImageParts(String imageName, TraceContext trace) throws RemoteException {
+        return owner(imageName, master -> master.getImageParts(imageName, trace));
+    }
+
+    @Override
+    public Map<Integer, Map<String, DataNodeInterface>> getImageReplicas(String imageName, TraceContext trace)
+            throws RemoteException {
+        return owner(imageName, master -> master.getImageReplicas(imageName, trace));
+    }
+
+    @Override
+    public boolean storeImage(String imageName, byte[] imageData, int numParts, GeoMetadata metadata,
+            TraceContext trace) throws RemoteException {
+        return owner(imageName, master -> master.storeImage(imageName, imageData, numParts, metadata, trace));
+    }
+
+    @Override
+    public boolean deleteImage(String imageName, TraceContext trace) throws RemoteException {
+        return owner(imageName, master -> master.deleteImage(imageName, trace));
+    }
+
+    @Override
+    public boolean storeTiledImage(String imageName, byte[] imageData, int tileSize, GeoMetadata metadata,
+            TraceContext trace) throws RemoteException {
+        return owner(imageName, master -> master.storeTiledImage(imageName, imageData, tileSize, metadata, trace));
+    }
+
+    @Override
+    public TilePyramid getTilePyramid(String imageName, TraceContext trace) throws RemoteException {
+        return owner(imageName, master -> master.getTilePyramid(imageName, trace));
+    }
+
+    @Override
+    public TileLocation locateTile(String imageName, int z, int x, int y, TraceContext trace) throws RemoteException {
+        return owner(imageName, master -> master.locateTile(imageName, z, x, y, trace));
+    }
+
+    @Override
+    public ImagePage queryImages(BoundingBox bbox, long fromMillis, long toMillis, int limit, TraceContext trace)
+            throws RemoteException {
+        List<String> result = new ArrayList<>();
+        List<Integer> unavailable = new ArrayList<>();
+        RemoteException failure = null;
+        boolean answered = false;
+        for (int i = 0; i < masters.length() && result.size() < limit; i++) {
+            int remaining = limit - result.size();
+            try {
+                ImagePage page = call(i, master -> master.queryImages(bbox, fromMillis, toMillis, remaining, trace));
+                result.addAll(page.names);
+                answered = true;
+            } catch (RemoteException e) {
+                System.err.println("Aviso: partição " + i + " não respondeu a queryImages: " + e.getMessage());
+                failure = e;
+                unavailable.add(i);
+            }
+        }
+        if (!answered && failure != null) {
+            throw failure;
+        }
+        return new ImagePage(result, null, unavailable);
+    }
+
+    @Override
+    public List<String> listUnderReplicatedParts(TraceContext trace) throws RemoteException {
+        List<String> result = new ArrayList<>();
+        List<List<String>> partitions = gather("listUnderReplicatedParts", null,
+                master -> master.listUnderReplicatedParts(trace));
+        for (List<String> parts : partitions) {
+            result.addAll(parts);
+        }
+        return result;
+    }
+
+    @Override
+    public void handleDataNodeFailure(String dataNodeId, TraceContext trace) throws RemoteException {
+        gather("handleDataNodeFailure", null, master -> {
+            master.handleDataNodeFailure(dataNodeId, trace);
+            return null;
+        });
+    }
+
+    @Override
+    public void reportCorruptPart(String dataNodeId, String imageName, int partNumber, TraceContext trace)
+            throws RemoteException {
+        owner(imageName, master -> {
+            master.reportCorruptPart(dataNodeId, imageName, partNumber, trace);
+            return null;
+        });
+    }
+
+    @Override
+    public void subscribe(String eventType, SubscriberInterface subscriber) throws RemoteException {
+        gather("subscribe", null, master -> {
+            master.subscribe(eventType, subscriber);
+            return null;
+        });
+    }
+
+    @Override
+    public void unsubscribe(String eventType, SubscriberInterface subscriber) throws RemoteException {
+        gather("unsubscribe", null, master -> {
+            master.unsubscribe(eventType, subscriber);
+            return null;
+        });
+    }
+
+    @Override
+    public List<String> listEventTypes() throws RemoteException {
+        // Todas as partições têm os mesmos tipos de evento: basta a primeira que responder
+        RemoteException failure = null;
+        for (int i = 0; i < masters.length(); i++) {
+            try {
+                return call(i, MasterServerInterface::listEventTypes);
+            } catch (RemoteException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+}
@@ -0,0 +1,319 @@
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escolha de réplica e leituras com hedge no cliente.
+ *
+ * Para cada DataNode o cliente mantém a média móvel exponencial (EWMA) da latência
+ * de downloadPart e o número de requisições em andamento. As réplicas de uma parte
+ * são ordenadas por ewma * (em andamento + 1): um nó lento ou sobrecarregado deixa
+ * de ser o preferido sem que o master precise pingar ninguém. A EWMA decai com o
+ * tempo sem amostras, para que um nó penalizado volte a ser experimentado.
+ *
+ * A leitura vai para a melhor réplica. Se ela não responder dentro do percentil
+ * client.hedge.percentile das latências recentes, uma segunda requisição (hedge)
+ * vai para a próxima réplica; a que responder primeiro vence e a outra é cancelada.
+ * Com o percentil 95, no máximo ~5% das leituras geram uma requisição extra. As
+ * latências são contadas em janelas de client.hedge.windowSeconds e o prazo vem da
+ * última janela completa, para acompanhar mudanças de latência do cluster.
+ *
+ * Um DataNode ocupado (DataNodeBusyException) recusa a leitura na hora: a próxima
+ * réplica é tentada imediatamente e o nó é penalizado pelo tempo que ele sugeriu
+ * esperar. Se todas as réplicas recusarem, a leitura espera esse tempo e recomeça,
+ * até client.busy.maxRetries vezes.
+ */
+public class ReplicaSelector {
+    private static final double EWMA_ALPHA = Double.parseDouble(System.getProperty("client.replica.ewmaAlpha", "0.3"));
+    private static final long EWMA_HALF_LIFE_NANOS = TimeUnit.SECONDS
+            .toNanos(Long.getLong("client.replica.decaySeconds", 10));
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final boolean HEDGE_ENABLED = !Boolean.getBoolean("client.hedge.disabled");
+    private static final double HEDGE_PERCENTILE = Double.parseDouble(System.getProperty("client.hedge.percentile", "95"));
+    private static final long HEDGE_MIN_DELAY_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("client.hedge.minDelayMs", 2));
+    // Prazo usado enquanto ainda não há amostras suficientes para o percentil
+    private static final long HEDGE_INITIAL_DELAY_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("client.hedge.initialDelayMs", 100));
+    private static final int HEDGE_MIN_SAMPLES = 50;
+    private static final long HEDGE_WINDOW_NANOS = TimeUnit.SECONDS
+            .toNanos(Long.getLong("client.hedge.windowSeconds", 10));
+    private static final int BUSY_MAX_RETRIES = Integer.getInteger("client.busy.maxRetries", 5);
+
+    private static final class NodeStats {
+        final AtomicInteger outstanding = new AtomicInteger();
+        private double ewmaNanos = -1; // -1 = sem amostras
+        private long lastUpdate;
+
+        synchronized void observe(long nanos) {
+            long now = System.nanoTime();
+            ewmaNanos = ewmaNanos < 0 ? nanos : EWMA_ALPHA * nanos + (1 - EWMA_ALPHA) * decayed(now);
+            lastUpdate = now;
+        }
+
+        synchronized double score() {
+            // Nós sem amostras têm custo zero e são experimentados primeiro
+            double ewma = ewmaNanos < 0 ? 0 : decayed(System.nanoTime());
+            return (ewma + 1) * (outstanding.get() + 1);
+        }
+
+        private double decayed(long now) {
+            return ewmaNanos * Math.pow(0.5, (now - lastUpdate) / (double) EWMA_HALF_LIFE_NANOS);
+        }
+    }
+
+    private final Tracer tracer;
+    private final Map<String, NodeStats> stats = new ConcurrentHashMap<>();
+    // Latências das leituras bem-sucedidas na janela atual e na anterior
+    private volatile LatencyHistogram currentWindow = new LatencyHistogram();
+    private volatile LatencyHistogram previousWindow = new LatencyHistogram();
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder busyRejections = new LongAdder();
+    private final LongAdder busyBackoffs = new LongAdder();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "hedged-read");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplicaSelector(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Baixa uma parte de uma das réplicas, com hedge para a segunda melhor réplica
+     * quando a primeira demora e failover imediato quando ela falha.
+     *
+     * @param replicas réplicas da parte (id do DataNode -> stub)
+     * @param parent   contexto de rastreamento da operação que faz a leitura
+     * @return os bytes da parte, ou null se nenhuma réplica a entregou
+     */
+    public byte[] downloadPart(String imageName, int partNumber, Map<String, DataNodeInterface> replicas,
+            TraceContext parent) throws InterruptedException {
+        reads.increment();
+        for (int retries = 0;; retries++) {
+            AtomicLong busyHintMillis = new AtomicLong();
+            byte[] data = downloadOnce(imageName, partNumber, replicas, parent, busyHintMillis);
+            long hint = busyHintMillis.get();
+            if (data != null || hint == 0 || retries >= BUSY_MAX_RETRIES) {
+                return data;
+            }
+            // Réplicas ocupadas: espera o tempo sugerido pelos DataNodes (com jitter) e tenta de novo
+            busyBackoffs.increment();
+            Thread.sleep(hint + ThreadLocalRandom.current().nextLong(hint / 2 + 1));
+        }
+    }
+
+    /**
+     * Uma rodada de tentativas sobre as réplicas.
+     * @param busyHintMillis recebe o maior tempo de espera sugerido pelas réplicas ocupadas
+     */
+    private byte[] downloadOnce(String imageName, int partNumber, Map<String, DataNodeInterface> replicas,
+            TraceContext parent, AtomicLong busyHintMillis) throws InterruptedException {
+        List<String> ranked = rank(replicas);
+        if (ranked.isEmpty()) {
+            return null;
+        }
+
+        ExecutorCompletionService<byte[]> completion = new ExecutorCompletionService<>(executor);
+        List<Future<byte[]>> futures = new ArrayList<>(2);
+        Map<Future<byte[]>, Boolean> isHedge = new ConcurrentHashMap<>();
+        int next = 0;
+        futures.add(completion.submit(attempt(imageName, partNumber, ranked.get(next), replicas.get(ranked.get(next)),
+                parent, false, busyHintMillis)));
+        next++;
+        int pending = 1;
+        boolean hedged = !HEDGE_ENABLED;
+
+        try {
+            while (pending > 0) {
+                Future<byte[]> done;
+                if (!hedged && next < ranked.size()) {
+                    done = completion.poll(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        // A primeira réplica passou do prazo: envia o hedge
+                        hedged = true;
+                        hedges.increment();
+                        Future<byte[]> hedge = completion.submit(attempt(imageName, partNumber, ranked.get(next),
+                                replicas.get(ranked.get(next)), parent, true, busyHintMillis));
+                        isHedge.put(hedge, Boolean.TRUE);
+                        futures.add(hedge);
+                        next++;
+                        pending++;
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                pending--;
+
+                byte[] data = result(done);
+                if (data != null) {
+                    if (isHedge.containsKey(done)) {
+                        hedgeWins.increment();
+                    }
+                    return data;
+                }
+                // Falha (exceção ou parte ausente/corrompida): tenta a próxima réplica sem esperar o prazo
+                if (pending == 0 && next < ranked.size()) {
+                    futures.add(completion.submit(attempt(imageName, partNumber, ranked.get(next),
+                            replicas.get(ranked.get(next)), parent, false, busyHintMillis)));
+                    next++;
+                    pending++;
+                }
+            }
+            return null;
+        } finally {
+            // Cancela a requisição mais lenta. A chamada RMI em curso não é abortada no
+            // DataNode, mas o resultado é descartado e o cliente não espera por ela.
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Callable<byte[]> attempt(String imageName, int partNumber, String dataNodeId, DataNodeInterface dataNode,
+            TraceContext parent, boolean hedge, AtomicLong busyHintMillis) {
+        NodeStats nodeStats = stats(dataNodeId);
+        return () -> {
+            nodeStats.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            boolean ok = false;
+            long busyPenaltyNanos = 0;
+            try (Span rpc = tracer.startClientSpan("DataNode.downloadPart", parent)) {
+                rpc.setAttribute("part.number", partNumber).setAttribute("datanode.id", dataNodeId)
+                        .setAttribute("hedge", hedge);
+                try {
+                    byte[] data = dataNode.downloadPart(imageName, partNumber, rpc.context());
+                    ok = data != null;
+                    if (!ok) {
+                        rpc.setError();
+                    }
+                    return data;
+                } catch (DataNodeBusyException e) {
+                    rpc.setAttribute("datanode.busy", true);
+                    busyRejections.increment();
+                    busyHintMillis.accumulateAndGet(e.retryAfterMillis, Math::max);
+                    busyPenaltyNanos = TimeUnit.MILLISECONDS.toNanos(e.retryAfterMillis);
+                    return null;
+                } catch (RemoteException e) {
+                    rpc.setError();
+                    System.err.println("Falha ao baixar a parte " + partNumber + " de " + dataNodeId + ": "
+                            + e.getMessage());
+                    return null;
+                }
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                nodeStats.outstanding.decrementAndGet();
+                if (ok) {
+                    nodeStats.observe(elapsed);
+                    latencyWindow().record(elapsed);
+                } else if (busyPenaltyNanos > 0) {
+                    nodeStats.observe(Math.max(elapsed, busyPenaltyNanos));
+                } else {
+                    nodeStats.observe(Math.max(elapsed, FAILURE_PENALTY_NANOS));
+                }
+            }
+        };
+    }
+
+    private static byte[] result(Future<byte[]> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Réplicas em ordem crescente de custo estimado. O embaralhamento prévio
+     * desempata os nós ainda sem amostras.
+     */
+    private List<String> rank(Map<String, DataNodeInterface> replicas) {
+        List<String> ids = new ArrayList<>(replicas.keySet());
+        Collections.shuffle(ids);
+        Map<String, Double> scores = new HashMap<>();
+        for (String id : ids) {
+            scores.put(id, stats(id).score());
+        }
+        ids.sort(Comparator.comparingDouble(scores::get));
+        return ids;
+    }
+
+    private NodeStats stats(String dataNodeId) {
+        return stats.computeIfAbsent(dataNodeId, id -> new NodeStats());
+    }
+
+    /**
+     * Janela atual de latências, trocada a cada HEDGE_WINDOW_NANOS. Se passou mais de
+     * uma janela sem troca (cliente ocioso), a anterior também é descartada.
+     */
+    private LatencyHistogram latencyWindow() {
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= HEDGE_WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            previousWindow = now - start < 2 * HEDGE_WINDOW_NANOS ? currentWindow : new LatencyHistogram();
+            currentWindow = new LatencyHistogram();
+        }
+        return currentWindow;
+    }
+
+    /**
+     * Prazo do hedge: o percentil da última janela completa ou, enquanto ela tiver
+     * poucas amostras (início, ou cliente pouco usado), o da janela atual.
+     */
+    private long hedgeDelayNanos() {
+        LatencyHistogram current = latencyWindow();
+        LatencyHistogram previous = previousWindow;
+        LatencyHistogram basis = previous.count() >= HEDGE_MIN_SAMPLES ? previous : current;
+        if (basis.count() < HEDGE_MIN_SAMPLES) {
+            return HEDGE_INITIAL_DELAY_NANOS;
+        }
+        return Math.max(HEDGE_MIN_DELAY_NANOS, basis.percentile(HEDGE_PERCENTILE));
+    }
+
+    public long reads() {
+        return reads.sum();
+    }
+
+    /** Leituras que dispararam uma segunda requisição. */
+    public long hedges() {
+        return hedges.sum();
+    }
+
+    /** Hedges em que a segunda réplica respondeu primeiro. */
+    public long hedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /** Tentativas recusadas por DataNodes ocupados. */
+    public long busyRejections() {
+        return busyRejections.sum();
+    }
+
+    /** Esperas porque todas as réplicas de uma parte estavam ocupadas. */
+    public long busyBackoffs() {
+        return busyBackoffs.sum();
+    }
+}
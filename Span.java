@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Um trecho cronometrado de uma operação. Criado por Tracer.startSpan e encerrado
+ * com close() (normalmente em try-with-resources), quando é gravado no buffer
+ * circular do Tracer e volta a ser corrente o span anterior da thread.
+ */
+public final class Span implements AutoCloseable {
+    /** Tipos de span do OTLP. */
+    static final int KIND_INTERNAL = 1;
+    static final int KIND_SERVER = 2;
+    static final int KIND_CLIENT = 3;
+
+    final Tracer tracer;
+    final String name;
+    final int kind;
+    final TraceContext context;
+    final String parentSpanId;
+    final long startEpochNanos;
+    final Span previous;
+    long endEpochNanos;
+    boolean error;
+    List<String[]> attributes;
+    // Posição no buffer circular do Tracer, atribuída antes de o span ser publicado nele
+    long ringIndex;
+
+    Span(Tracer tracer, String name, int kind, TraceContext context, String parentSpanId, Span previous) {
+        this.tracer = tracer;
+        this.name = name;
+        this.kind = kind;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.previous = previous;
+        this.startEpochNanos = Tracer.epochNanos();
+    }
+
+    /**
+     * Contexto a ser enviado nas chamadas RMI feitas dentro deste span.
+     */
+    public TraceContext context() {
+        return context;
+    }
+
+    public Span setAttribute(String key, Object value) {
+        if (attributes == null) {
+            attributes = new ArrayList<>(4);
+        }
+        attributes.add(new String[] { key, String.valueOf(value) });
+        return this;
+    }
+
+    public void setError() {
+        this.error = true;
+    }
+
+    @Override
+    public void close() {
+        endEpochNanos = Tracer.epochNanos();
+        tracer.finish(this);
+    }
+}
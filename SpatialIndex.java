@@ -0,0 +1,271 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Índice espacial das cenas: R-tree empacotada por STR (Sort-Tile-Recursive) para
+ * consultas por área e intervalo de captura.
+ *
+ * A árvore empacotada é imutável e consultada sem locks. Inserções e remoções vão
+ * para um pequeno delta (mapa de inseridas e conjunto de removidas), que também é
+ * consultado e mascara as entradas antigas da árvore. Quando o delta passa de
+ * REBUILD_THRESHOLD entradas, uma thread em segundo plano reempacota a árvore com
+ * as alterações e a substitui atomicamente.
+ */
+public class SpatialIndex {
+    private static final int NODE_CAPACITY = 16;
+    private static final int REBUILD_THRESHOLD = 4096;
+
+    private static final class Entry {
+        final String name;
+        final GeoMetadata metadata;
+
+        Entry(String name, GeoMetadata metadata) {
+            this.name = name;
+            this.metadata = metadata;
+        }
+    }
+
+    private static final class Node {
+        final double minLon;
+        final double minLat;
+        final double maxLon;
+        final double maxLat;
+        final Node[] children; // null nas folhas
+        final Entry[] entries; // null nos nós internos
+
+        Node(double minLon, double minLat, double maxLon, double maxLat, Node[] children, Entry[] entries) {
+            this.minLon = minLon;
+            this.minLat = minLat;
+            this.maxLon = maxLon;
+            this.maxLat = maxLat;
+            this.children = children;
+            this.entries = entries;
+        }
+    }
+
+    private volatile Node root;
+    private volatile List<Entry> packedEntries = new ArrayList<>();
+    private volatile Set<String> packedNames = new HashSet<>();
+
+    // Alterações desde o último empacotamento
+    private final Map<String, GeoMetadata> inserted = new ConcurrentHashMap<>();
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "spatial-index-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public synchronized void put(String imageName, GeoMetadata metadata) {
+        removed.remove(imageName);
+        inserted.put(imageName, metadata);
+        maybeScheduleRebuild();
+    }
+
+    /**
+     * Remove a imagem do índice; não faz nada se ela não estiver indexada. Só uma
+     * entrada da árvore empacotada precisa ser mascarada no delta (ou, durante um
+     * reempacotamento, uma inserção que pode ter entrado na árvore nova).
+     */
+    public synchronized void remove(String imageName) {
+        inserted.remove(imageName);
+        if (packedNames.contains(imageName) || rebuildScheduled.get()) {
+            removed.add(imageName);
+            maybeScheduleRebuild();
+        }
+    }
+
+    private void maybeScheduleRebuild() {
+        if (inserted.size() + removed.size() >= REBUILD_THRESHOLD && rebuildScheduled.compareAndSet(false, true)) {
+            rebuilder.execute(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuildScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reempacota a árvore com as alterações do delta. A árvore nova é construída
+     * fora do lock; somente a captura do delta e a troca são sincronizadas.
+     */
+    void rebuild() {
+        Map<String, GeoMetadata> insertedSnapshot;
+        Set<String> removedSnapshot;
+        List<Entry> base;
+        synchronized (this) {
+            insertedSnapshot = new HashMap<>(inserted);
+            removedSnapshot = new HashSet<>(removed);
+            base = packedEntries;
+        }
+
+        List<Entry> entries = new ArrayList<>(base.size() + insertedSnapshot.size());
+        for (Entry entry : base) {
+            if (!removedSnapshot.contains(entry.name) && !insertedSnapshot.containsKey(entry.name)) {
+                entries.add(entry);
+            }
+        }
+        for (Map.Entry<String, GeoMetadata> e : insertedSnapshot.entrySet()) {
+            entries.add(new Entry(e.getKey(), e.getValue()));
+        }
+        Node newRoot = pack(new ArrayList<>(entries));
+        Set<String> names = new HashSet<>();
+        for (Entry entry : entries) {
+            names.add(entry.name);
+        }
+
+        synchronized (this) {
+            root = newRoot;
+            packedEntries = entries;
+            packedNames = names;
+            // Remove do delta apenas o que já está refletido na árvore nova
+            for (Map.Entry<String, GeoMetadata> e : insertedSnapshot.entrySet()) {
+                inserted.remove(e.getKey(), e.getValue());
+            }
+            removed.removeAll(removedSnapshot);
+            // Remoções feitas durante o reempacotamento de nomes que não estão na árvore nova
+            removed.retainAll(names);
+        }
+    }
+
+    /**
+     * Retorna até {@code limit} imagens cujo footprint intersecta {@code bbox} e cuja
+     * captura está em [fromMillis, toMillis]. Imagens recém-inseridas vêm primeiro.
+     */
+    public List<String> query(BoundingBox bbox, long fromMillis, long toMillis, int limit) {
+        List<String> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+
+        // Nomes vindos do delta; evita duplicatas caso um reempacotamento termine durante a consulta
+        Set<String> fromDelta = new HashSet<>();
+        for (Map.Entry<String, GeoMetadata> e : inserted.entrySet()) {
+            if (matches(e.getValue(), bbox, fromMillis, toMillis)) {
+                result.add(e.getKey());
+                fromDelta.add(e.getKey());
+                if (result.size() >= limit) {
+                    return result;
+                }
+            }
+        }
+
+        Node node = root;
+        if (node == null) {
+            return result;
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            if (!bbox.intersects(current.minLon, current.minLat, current.maxLon, current.maxLat)) {
+                continue;
+            }
+            if (current.children != null) {
+                for (Node child : current.children) {
+                    stack.push(child);
+                }
+                continue;
+            }
+            for (Entry entry : current.entries) {
+                if (matches(entry.metadata, bbox, fromMillis, toMillis)
+                        && !removed.contains(entry.name) && !inserted.containsKey(entry.name)
+                        && !fromDelta.contains(entry.name)) {
+                    result.add(entry.name);
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(GeoMetadata metadata, BoundingBox bbox, long fromMillis, long toMillis) {
+        return metadata.captureTimeMillis >= fromMillis && metadata.captureTimeMillis <= toMillis
+                && bbox.intersects(metadata.footprint);
+    }
+
+    private static Node pack(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        List<Node> level = new ArrayList<>();
+        for (List<Entry> group : strGroups(entries,
+                e -> (e.metadata.footprint.minLon + e.metadata.footprint.maxLon) / 2,
+                e -> (e.metadata.footprint.minLat + e.metadata.footprint.maxLat) / 2)) {
+            level.add(leaf(group));
+        }
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>();
+            for (List<Node> group : strGroups(level, n -> (n.minLon + n.maxLon) / 2, n -> (n.minLat + n.maxLat) / 2)) {
+                parents.add(internal(group));
+            }
+            level = parents;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Divide os itens em grupos de até NODE_CAPACITY: ordena pelo centro em x, corta em
+     * ~sqrt(n / capacidade) fatias verticais e ordena cada fatia pelo centro em y.
+     */
+    private static <T> List<List<T>> strGroups(List<T> items, ToDoubleFunction<T> centerX, ToDoubleFunction<T> centerY) {
+        int n = items.size();
+        int nodeCount = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * NODE_CAPACITY;
+
+        items.sort(Comparator.comparingDouble(centerX));
+        List<List<T>> groups = new ArrayList<>(nodeCount);
+        for (int s = 0; s < n; s += sliceSize) {
+            List<T> slice = new ArrayList<>(items.subList(s, Math.min(n, s + sliceSize)));
+            slice.sort(Comparator.comparingDouble(centerY));
+            for (int i = 0; i < slice.size(); i += NODE_CAPACITY) {
+                groups.add(slice.subList(i, Math.min(slice.size(), i + NODE_CAPACITY)));
+            }
+        }
+        return groups;
+    }
+
+    private static Node leaf(List<Entry> group) {
+        return bounded(group, e -> e.metadata.footprint, null, group.toArray(new Entry[0]));
+    }
+
+    private static Node internal(List<Node> group) {
+        return bounded(group, n -> new BoundingBox(n.minLon, n.minLat, n.maxLon, n.maxLat),
+                group.toArray(new Node[0]), null);
+    }
+
+    private static <T> Node bounded(List<T> group, Function<T, BoundingBox> box, Node[] children, Entry[] entries) {
+        double minLon = Double.POSITIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        for (T item : group) {
+            BoundingBox b = box.apply(item);
+            minLon = Math.min(minLon, b.minLon);
+            minLat = Math.min(minLat, b.minLat);
+            maxLon = Math.max(maxLon, b.maxLon);
+            maxLat = Math.max(maxLat, b.maxLat);
+        }
+        return new Node(minLon, minLat, maxLon, maxLat, children, entries);
+    }
+}
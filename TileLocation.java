@@ -0,0 +1,17 @@
+import java.io.Serializable;
+
+/**
+ * Localização de um tile: número da parte que o armazena e um DataNode acessível
+ * que possui uma réplica dessa parte.
+ */
+public class TileLocation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final int partNumber;
+    final DataNodeInterface dataNode;
+
+    TileLocation(int partNumber, DataNodeInterface dataNode) {
+        this.partNumber = partNumber;
+        this.dataNode = dataNode;
+    }
+}
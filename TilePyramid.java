@@ -0,0 +1,147 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Metadados de uma imagem armazenada como pirâmide de tiles.
+ *
+ * O nível z = levels - 1 tem a resolução original; cada nível abaixo tem metade
+ * da largura e altura do anterior, até o nível 0, em que a imagem inteira cabe em
+ * um único tile. Cada tile é uma parte independente da imagem, numerada nível a
+ * nível (linha a linha dentro do nível), e é decodificável sozinho.
+ */
+public class TilePyramid implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final int width;
+    final int height;
+    final int tileSize;
+    final int levels;
+    final String format;
+
+    TilePyramid(int width, int height, int tileSize, String format) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.format = format;
+        int levels = 1;
+        while ((Math.max(width, height) - 1) / tileSize >= (1 << (levels - 1))) {
+            levels++;
+        }
+        this.levels = levels;
+    }
+
+    /** Largura da imagem no nível z. */
+    int levelWidth(int z) {
+        return Math.max(1, (int) Math.ceil(width / (double) (1L << (levels - 1 - z))));
+    }
+
+    /** Altura da imagem no nível z. */
+    int levelHeight(int z) {
+        return Math.max(1, (int) Math.ceil(height / (double) (1L << (levels - 1 - z))));
+    }
+
+    int tileColumns(int z) {
+        return (levelWidth(z) + tileSize - 1) / tileSize;
+    }
+
+    int tileRows(int z) {
+        return (levelHeight(z) + tileSize - 1) / tileSize;
+    }
+
+    int tileCount() {
+        int count = 0;
+        for (int z = 0; z < levels; z++) {
+            count += tileColumns(z) * tileRows(z);
+        }
+        return count;
+    }
+
+    /**
+     * Número da parte que armazena o tile (z, x, y), ou -1 se o tile não existir.
+     */
+    int partNumber(int z, int x, int y) {
+        if (z < 0 || z >= levels || x < 0 || x >= tileColumns(z) || y < 0 || y >= tileRows(z)) {
+            return -1;
+        }
+        int offset = 0;
+        for (int level = 0; level < z; level++) {
+            offset += tileColumns(level) * tileRows(level);
+        }
+        return offset + y * tileColumns(z) + x;
+    }
+
+    /**
+     * Decodifica a imagem uma única vez e gera todos os tiles da pirâmide, já
+     * codificados, na ordem dos números de parte.
+     *
+     * @param imageData bytes da imagem em qualquer formato suportado pelo ImageIO
+     * @param tileSize  largura e altura (em pixels) de cada tile
+     * @param tiles     lista que recebe os tiles codificados
+     * @return a pirâmide, ou null se a imagem não puder ser decodificada
+     */
+    static TilePyramid cut(byte[] imageData, int tileSize, List<byte[]> tiles) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(imageData));
+        if (source == null) {
+            return null;
+        }
+        // JPEG para imagens opacas (o caso das cenas de satélite); PNG quando há transparência
+        String format = source.getColorModel().hasAlpha() ? "png" : "jpg";
+        TilePyramid pyramid = new TilePyramid(source.getWidth(), source.getHeight(), tileSize, format);
+
+        // Gera os níveis do mais detalhado para o menos detalhado, reduzindo à metade a cada passo
+        List<BufferedImage> levelImages = new ArrayList<>();
+        BufferedImage level = source;
+        for (int z = pyramid.levels - 1; z >= 0; z--) {
+            if (z < pyramid.levels - 1) {
+                level = scale(level, pyramid.levelWidth(z), pyramid.levelHeight(z), format);
+            }
+            levelImages.add(0, level);
+        }
+
+        for (int z = 0; z < pyramid.levels; z++) {
+            BufferedImage image = levelImages.get(z);
+            for (int y = 0; y < pyramid.tileRows(z); y++) {
+                for (int x = 0; x < pyramid.tileColumns(z); x++) {
+                    int px = x * tileSize;
+                    int py = y * tileSize;
+                    int w = Math.min(tileSize, image.getWidth() - px);
+                    int h = Math.min(tileSize, image.getHeight() - py);
+                    tiles.add(encode(image.getSubimage(px, py, w, h), format));
+                }
+            }
+        }
+        return pyramid;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height, String format) {
+        int type = format.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private static byte[] encode(BufferedImage tile, String format) throws IOException {
+        // Copia o recorte para uma imagem própria: o writer de JPEG não aceita todos os
+        // tipos de imagem e getSubimage compartilha o raster da imagem inteira
+        int type = format.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage copy = new BufferedImage(tile.getWidth(), tile.getHeight(), type);
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(tile, 0, 0, null);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(copy, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,25 @@
+import java.io.Serializable;
+
+/**
+ * Contexto de rastreamento propagado em cada chamada RMI: identifica o trace,
+ * o span que fez a chamada (pai dos spans criados no servidor) e se o trace foi
+ * amostrado para exportação. Pode ser null, caso em que o servidor inicia um novo trace.
+ */
+public final class TraceContext implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String traceId;
+    final String spanId;
+    final boolean sampled;
+
+    TraceContext(String traceId, String spanId, boolean sampled) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    @Override
+    public String toString() {
+        return traceId + "/" + spanId + (sampled ? " (amostrado)" : "");
+    }
+}
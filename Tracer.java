@@ -0,0 +1,277 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Rastreamento distribuído entre Client, MasterServer e DataNode.
+ *
+ * Cada processo (ou componente, quando vários executam na mesma JVM) tem um Tracer
+ * com nome de serviço próprio. Todos os spans encerrados são gravados em um buffer
+ * circular em memória; uma thread exporta periodicamente os spans dos traces
+ * amostrados para traces/&lt;serviço&gt;.jsonl, uma requisição OTLP/JSON por linha
+ * (mesmo formato do file exporter do OpenTelemetry Collector).
+ *
+ * A decisão de amostragem é tomada na raiz do trace (-Dtrace.sampleRate, padrão 0.01)
+ * e propagada no TraceContext, de modo que um trace amostrado é exportado por todos
+ * os processos por onde passou.
+ */
+public class Tracer {
+    private static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("trace.sampleRate", "0.01"));
+    private static final int BUFFER_SIZE = Integer.getInteger("trace.bufferSize", 8192);
+    private static final String TRACE_DIR = System.getProperty("trace.dir", "traces/");
+    private static final int EXPORT_INTERVAL_SECONDS = Integer.getInteger("trace.exportIntervalSeconds", 5);
+
+    // Span corrente de cada thread, compartilhado por todos os Tracers da JVM
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private static final long BASE_EPOCH_NANOS = System.currentTimeMillis() * 1_000_000L;
+    private static final long BASE_NANO_TIME = System.nanoTime();
+
+    private final String serviceName;
+    private final AtomicReferenceArray<Span> ring = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong writeIndex = new AtomicLong();
+    private long exportIndex; // usado apenas pela thread exportadora
+    private Thread exporterThread;
+    private volatile boolean closed;
+
+    public Tracer(String serviceName) {
+        this.serviceName = serviceName;
+        startExporter();
+    }
+
+    static long epochNanos() {
+        return BASE_EPOCH_NANOS + (System.nanoTime() - BASE_NANO_TIME);
+    }
+
+    private static String randomHex(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < bytes; i++) {
+            int b = random.nextInt(256);
+            sb.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Contexto do span corrente da thread, para ser enviado nas chamadas RMI.
+     * Retorna null se não houver span ativo.
+     */
+    public static TraceContext current() {
+        Span span = CURRENT.get();
+        return span == null ? null : span.context;
+    }
+
+    /**
+     * Inicia o span que atende uma chamada RMI recebida.
+     * @param parent contexto enviado pelo chamador; se null, inicia um novo trace
+     */
+    public Span startServerSpan(String name, TraceContext parent) {
+        return startSpan(name, Span.KIND_SERVER, parent);
+    }
+
+    /**
+     * Inicia um span para uma chamada RMI feita a partir do span corrente da thread.
+     */
+    public Span startClientSpan(String name) {
+        return startSpan(name, Span.KIND_CLIENT, current());
+    }
+
+    /**
+     * Inicia um span para uma chamada RMI feita em outra thread, filho de {@code parent}.
+     */
+    public Span startClientSpan(String name, TraceContext parent) {
+        return startSpan(name, Span.KIND_CLIENT, parent);
+    }
+
+    /**
+     * Inicia um span interno, filho do span corrente (ou raiz de um novo trace).
+     */
+    public Span startSpan(String name) {
+        return startSpan(name, Span.KIND_INTERNAL, current());
+    }
+
+    private Span startSpan(String name, int kind, TraceContext parent) {
+        TraceContext context;
+        String parentSpanId;
+        if (parent == null) {
+            boolean sampled = SAMPLE_RATE > 0 && ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE;
+            context = new TraceContext(randomHex(16), randomHex(8), sampled);
+            parentSpanId = null;
+        } else {
+            context = new TraceContext(parent.traceId, randomHex(8), parent.sampled);
+            parentSpanId = parent.spanId;
+        }
+        Span span = new Span(this, name, kind, context, parentSpanId, CURRENT.get());
+        CURRENT.set(span);
+        return span;
+    }
+
+    void finish(Span span) {
+        if (CURRENT.get() == span) {
+            if (span.previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(span.previous);
+            }
+        }
+        long index = writeIndex.getAndIncrement();
+        span.ringIndex = index;
+        ring.set((int) (index % BUFFER_SIZE), span);
+    }
+
+    /**
+     * Retorna os spans mais recentes ainda presentes no buffer circular.
+     */
+    public List<Span> recentSpans() {
+        long end = writeIndex.get();
+        long start = Math.max(0, end - BUFFER_SIZE);
+        List<Span> spans = new ArrayList<>();
+        for (long i = start; i < end; i++) {
+            Span span = ring.get((int) (i % BUFFER_SIZE));
+            if (span != null) {
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
+    private void startExporter() {
+        exporterThread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Thread.sleep(EXPORT_INTERVAL_SECONDS * 1000L);
+                    exportSampled();
+                } catch (InterruptedException e) {
+                } catch (IOException e) {
+                    System.err.println("Erro ao exportar traces de " + serviceName + ": " + e.getMessage());
+                }
+            }
+        });
+        exporterThread.setDaemon(true);
+        exporterThread.start();
+    }
+
+    /**
+     * Encerra a thread exportadora; os spans ainda não exportados são descartados.
+     */
+    public void shutdown() {
+        closed = true;
+        exporterThread.interrupt();
+    }
+
+    private void exportSampled() throws IOException {
+        long end = writeIndex.get();
+        if (end - exportIndex > BUFFER_SIZE) {
+            // O buffer deu a volta antes da exportação; os spans mais antigos foram perdidos
+            System.err.println("Tracer " + serviceName + ": " + (end - exportIndex - BUFFER_SIZE)
+                    + " spans descartados antes da exportação.");
+            exportIndex = end - BUFFER_SIZE;
+        }
+        List<Span> sampled = new ArrayList<>();
+        long i = exportIndex;
+        for (; i < end; i++) {
+            Span span = ring.get((int) (i % BUFFER_SIZE));
+            if (span == null || span.ringIndex < i) {
+                // A posição foi reservada mas o span ainda não foi gravado: a próxima
+                // exportação recomeça daqui
+                break;
+            }
+            // ringIndex > i: sobrescrito por uma volta seguinte do buffer; o span se perdeu
+            if (span.ringIndex == i && span.context.sampled) {
+                sampled.add(span);
+            }
+        }
+        exportIndex = i;
+        if (sampled.isEmpty()) {
+            return;
+        }
+
+        File dir = new File(TRACE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        try (OutputStream os = new FileOutputStream(new File(dir, serviceName + ".jsonl"), true)) {
+            os.write(toOtlpJson(sampled).getBytes(StandardCharsets.UTF_8));
+            os.write('\n');
+        }
+    }
+
+    /**
+     * Serializa os spans como um ExportTraceServiceRequest do OTLP em JSON.
+     */
+    private String toOtlpJson(List<Span> spans) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+        appendAttribute(sb, "service.name", serviceName);
+        sb.append("]},\"scopeSpans\":[{\"scope\":{\"name\":\"mygeoeyes\"},\"spans\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            Span span = spans.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"traceId\":\"").append(span.context.traceId)
+                    .append("\",\"spanId\":\"").append(span.context.spanId).append('"');
+            if (span.parentSpanId != null) {
+                sb.append(",\"parentSpanId\":\"").append(span.parentSpanId).append('"');
+            }
+            sb.append(",\"name\":");
+            appendString(sb, span.name);
+            sb.append(",\"kind\":").append(span.kind)
+                    .append(",\"startTimeUnixNano\":\"").append(span.startEpochNanos)
+                    .append("\",\"endTimeUnixNano\":\"").append(span.endEpochNanos).append('"');
+            if (span.attributes != null) {
+                sb.append(",\"attributes\":[");
+                for (int a = 0; a < span.attributes.size(); a++) {
+                    if (a > 0) {
+                        sb.append(',');
+                    }
+                    appendAttribute(sb, span.attributes.get(a)[0], span.attributes.get(a)[1]);
+                }
+                sb.append(']');
+            }
+            if (span.error) {
+                sb.append(",\"status\":{\"code\":2}");
+            }
+            sb.append('}');
+        }
+        sb.append("]}]}]}");
+        return sb.toString();
+    }
+
+    private static void appendAttribute(StringBuilder sb, String key, String value) {
+        sb.append("{\"key\":");
+        appendString(sb, key);
+        sb.append(",\"value\":{\"stringValue\":");
+        appendString(sb, value);
+        sb.append("}}");
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operações do sistema usadas pelos benchmarks.
+ *
+ * O JMH não aceita benchmarks no pacote padrão, e as classes do sistema
+ * (MasterServer, DataNode, Client) vivem no pacote padrão, que não pode ser
+ * importado a partir de um pacote nomeado. Esta interface usa apenas tipos do
+ * JDK e é implementada por LoopbackCluster, no pacote padrão.
+ */
+public interface ClusterDriver {
+
+    boolean storeImage(String imageName, byte[] imageData, int numParts) throws Exception;
+
+    Map<Integer, ?> getImageParts(String imageName) throws Exception;
+
+    boolean uploadPart(int dataNodeIndex, String imageName, int partNumber, byte[] data) throws Exception;
+
+    byte[] downloadPart(int dataNodeIndex, String imageName, int partNumber) throws Exception;
+
+    byte[] fetchImage(String imageName) throws Exception;
+
+    byte[] assembleParts(List<byte[]> parts);
+
+    void failDataNode(int dataNodeIndex) throws Exception;
+
+    void close();
+
+    /**
+     * Cria um cluster em processo com MasterServer e DataNodes comunicando via RMI em loopback.
+     */
+    static ClusterDriver start(int numDataNodes, int replicationFactor) throws Exception {
+        return (ClusterDriver) Class.forName("LoopbackCluster")
+                .getDeclaredConstructor(int.class, int.class)
+                .newInstance(numDataNodes, replicationFactor);
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.List;
+import java.util.Map;
+
+import benchmarks.ClusterDriver;
+
+/**
+ * Implementação de ClusterDriver sobre um LocalCluster: MasterServer e DataNodes
+ * em processo, com todas as chamadas passando pela pilha RMI em loopback.
+ */
+public class LoopbackCluster implements ClusterDriver {
+    private final LocalCluster cluster;
+
+    public LoopbackCluster(int numDataNodes, int replicationFactor) throws Exception {
+        cluster = new LocalCluster(numDataNodes, replicationFactor);
+    }
+
+    @Override
+    public boolean storeImage(String imageName, byte[] imageData, int numParts) throws Exception {
+        return cluster.master().storeImage(imageName, imageData, numParts, null, null);
+    }
+
+    @Override
+    public Map<Integer, ?> getImageParts(String imageName) throws Exception {
+        return cluster.master().getImageParts(imageName, null);
+    }
+
+    @Override
+    public boolean uploadPart(int dataNodeIndex, String imageName, int partNumber, byte[] data) throws Exception {
+        return cluster.dataNode(dataNodeIndex).uploadPart(imageName, partNumber, data, null);
+    }
+
+    @Override
+    public byte[] downloadPart(int dataNodeIndex, String imageName, int partNumber) throws Exception {
+        return cluster.dataNode(dataNodeIndex).downloadPart(imageName, partNumber, null);
+    }
+
+    @Override
+    public byte[] fetchImage(String imageName) throws Exception {
+        return Client.fetchImage(cluster.master(), imageName);
+    }
+
+    @Override
+    public byte[] assembleParts(List<byte[]> parts) {
+        return Client.assembleParts(parts);
+    }
+
+    @Override
+    public void failDataNode(int dataNodeIndex) throws Exception {
+        cluster.master().handleDataNodeFailure(cluster.dataNodeId(dataNodeIndex), null);
+    }
+
+    @Override
+    public void close() {
+        cluster.close();
+    }
+}
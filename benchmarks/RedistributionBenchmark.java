@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mede a redistribuição de dados após a falha de um DataNode
+ * (handleDataNodeFailure -> redistributeDataFromFailedNode).
+ *
+ * Cada invocação usa um cluster novo, com as imagens já armazenadas,
+ * e mede apenas a recuperação das réplicas do nó que falhou. O cluster da
+ * invocação anterior é encerrado por completo, sem deixar threads rodando.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class RedistributionBenchmark {
+    @Param({ "100", "1000" })
+    int images;
+
+    @Param({ "65536" })
+    int imageSize;
+
+    @Param({ "5" })
+    int numParts;
+
+    @Param({ "4" })
+    int dataNodes;
+
+    @Param({ "2" })
+    int replicationFactor;
+
+    ClusterDriver cluster;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        cluster = ClusterDriver.start(dataNodes, replicationFactor);
+        byte[] imageData = new byte[imageSize];
+        new Random(42).nextBytes(imageData);
+        for (int i = 0; i < images; i++) {
+            cluster.storeImage("bench_redistribute_" + i + ".jpg", imageData, numParts);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        cluster.close();
+    }
+
+    @Benchmark
+    public void redistributeDataFromFailedNode() throws Exception {
+        cluster.failDataNode(0);
+    }
+}
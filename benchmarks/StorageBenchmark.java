@@ -0,0 +1,174 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks dos caminhos críticos de armazenamento e transferência:
+ * storeImage (divisão e cópia das partes), uploadPart/downloadPart no DataNode,
+ * getImageParts e reconstrução da imagem no cliente.
+ *
+ * Os dados das imagens são gerados no setup, fora da região medida.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ClusterState {
+        @Param({ "3" })
+        int dataNodes;
+
+        @Param({ "2" })
+        int replicationFactor;
+
+        ClusterDriver cluster;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            cluster = ClusterDriver.start(dataNodes, replicationFactor);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            cluster.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class StoreState {
+        // Nomes reaproveitados em rodízio: o catálogo e o disco do cluster não crescem
+        // durante a medição, e cada invocação mede o mesmo sistema
+        static final int STORE_NAMES = 16;
+
+        @Param({ "65536", "1048576", "8388608" })
+        int imageSize;
+
+        @Param({ "5" })
+        int numParts;
+
+        byte[] imageData;
+        final AtomicLong sequence = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            imageData = new byte[imageSize];
+            new Random(42).nextBytes(imageData);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PartState {
+        @Param({ "4096", "65536", "1048576" })
+        int partSize;
+
+        byte[] partData;
+
+        @Setup(Level.Trial)
+        public void setUp(ClusterState clusterState) throws Exception {
+            partData = new byte[partSize];
+            new Random(42).nextBytes(partData);
+            clusterState.cluster.uploadPart(0, "bench_download.jpg", 0, partData);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CatalogState {
+        @Param({ "1000" })
+        int catalogSize;
+
+        @Param({ "5" })
+        int numParts;
+
+        String[] imageNames;
+        final Random random = new Random(42);
+
+        @Setup(Level.Trial)
+        public void setUp(ClusterState clusterState) throws Exception {
+            byte[] imageData = new byte[16 * 1024];
+            new Random(42).nextBytes(imageData);
+            imageNames = new String[catalogSize];
+            for (int i = 0; i < catalogSize; i++) {
+                imageNames[i] = "bench_catalog_" + i + ".jpg";
+                clusterState.cluster.storeImage(imageNames[i], imageData, numParts);
+            }
+        }
+
+        String nextImage() {
+            return imageNames[random.nextInt(imageNames.length)];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AssembleState {
+        @Param({ "1048576", "8388608" })
+        int imageSize;
+
+        @Param({ "5", "50" })
+        int numParts;
+
+        List<byte[]> parts;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            parts = new ArrayList<>();
+            int partSize = imageSize / numParts;
+            for (int i = 0; i < numParts; i++) {
+                int size = (i == numParts - 1) ? imageSize - partSize * i : partSize;
+                parts.add(new byte[size]);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean storeImage(ClusterState clusterState, StoreState storeState) throws Exception {
+        String imageName = "bench_store_" + storeState.sequence.getAndIncrement() % StoreState.STORE_NAMES + ".jpg";
+        return clusterState.cluster.storeImage(imageName, storeState.imageData, storeState.numParts);
+    }
+
+    @Benchmark
+    public boolean uploadPart(ClusterState clusterState, PartState partState) throws Exception {
+        return clusterState.cluster.uploadPart(0, "bench_upload.jpg", 0, partState.partData);
+    }
+
+    @Benchmark
+    public byte[] downloadPart(ClusterState clusterState, PartState partState) throws Exception {
+        return clusterState.cluster.downloadPart(0, "bench_download.jpg", 0);
+    }
+
+    @Benchmark
+    public Map<Integer, ?> getImageParts(ClusterState clusterState, CatalogState catalogState) throws Exception {
+        return clusterState.cluster.getImageParts(catalogState.nextImage());
+    }
+
+    @Benchmark
+    public byte[] fetchImage(ClusterState clusterState, CatalogState catalogState) throws Exception {
+        return clusterState.cluster.fetchImage(catalogState.nextImage());
+    }
+
+    @Benchmark
+    public byte[] assembleParts(ClusterState clusterState, AssembleState assembleState) {
+        return clusterState.cluster.assembleParts(assembleState.parts);
+    }
+}